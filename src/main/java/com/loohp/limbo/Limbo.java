@@ -35,6 +35,7 @@ import com.loohp.limbo.inventory.InventoryType;
 import com.loohp.limbo.location.Location;
 import com.loohp.limbo.messages.MessagesManager;
 import com.loohp.limbo.metrics.Metrics;
+import com.loohp.limbo.network.JoinPacketTemplates;
 import com.loohp.limbo.network.ServerConnection;
 import com.loohp.limbo.network.protocol.packets.Packet;
 import com.loohp.limbo.network.protocol.packets.PacketIn;
@@ -42,6 +43,7 @@ import com.loohp.limbo.network.protocol.packets.PacketOut;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutBoss;
 import com.loohp.limbo.permissions.PermissionsManager;
 import com.loohp.limbo.player.Player;
+import com.loohp.limbo.player.ProfileService;
 import com.loohp.limbo.plugins.LimboPlugin;
 import com.loohp.limbo.plugins.PluginManager;
 import com.loohp.limbo.scheduler.LimboScheduler;
@@ -49,6 +51,7 @@ import com.loohp.limbo.scheduler.Tick;
 import com.loohp.limbo.utils.CustomStringUtils;
 import com.loohp.limbo.utils.ImageUtils;
 import com.loohp.limbo.utils.NetworkUtils;
+import com.loohp.limbo.utils.ThreadUtils;
 import com.loohp.limbo.world.DimensionRegistry;
 import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.Schematic;
@@ -80,6 +83,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -165,6 +169,8 @@ public final class Limbo {
 	private final File internalDataFolder;
 	
 	private final DimensionRegistry dimensionRegistry;
+	private final JoinPacketTemplates joinPacketTemplates;
+	private final ProfileService profileService;
 	
 	private final Tick tick;
 	private final LimboScheduler scheduler;
@@ -315,6 +321,8 @@ public final class Limbo {
 		console.sendMessage("Loaded all " + mappingsCount + " packet id mappings!");
 		
 		dimensionRegistry = new DimensionRegistry();
+		joinPacketTemplates = new JoinPacketTemplates();
+		profileService = new ProfileService(new File(internalDataFolder, "profiles.json"), ThreadUtils.newWorkerPool("Limbo-Profile-", properties.getNetworkWorkerThreads(), properties.isVirtualThreads()));
 		
 		worlds.add(loadDefaultWorld());
 		Location spawn = properties.getWorldSpawn();
@@ -358,7 +366,7 @@ public final class Limbo {
         permissionManager = new PermissionsManager();
         permissionManager.loadDefaultPermissionFile(permissionFile);     
         
-        eventsManager = new EventsManager();
+        eventsManager = new EventsManager(properties.getEventWorkerThreads());
         
         pluginFolder = new File("plugins");
         pluginFolder.mkdirs();
@@ -382,7 +390,13 @@ public final class Limbo {
 			}
 		}
 		
-		server = new ServerConnection(properties.getServerIp(), properties.getServerPort());
+		try {
+			joinPacketTemplates.rebuild();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		server = new ServerConnection(properties.getServerIp(), properties.getServerPort(), properties.getNetworkTransport(), properties.getNetworkIoThreads(), properties.getNetworkWorkerThreads(), properties.isVirtualThreads());
 		
 		metrics = new Metrics();
 		
@@ -409,6 +423,14 @@ public final class Limbo {
 	public DimensionRegistry getDimensionRegistry() {
 		return dimensionRegistry;
 	}
+	
+	public JoinPacketTemplates getJoinPacketTemplates() {
+		return joinPacketTemplates;
+	}
+	
+	public ProfileService getProfileService() {
+		return profileService;
+	}
 
 	public MessagesManager getMessagesManager() {
 		return messageManager;
@@ -465,6 +487,7 @@ public final class Limbo {
 	public void registerWorld(World world) {
 		if (!worlds.contains(world)) {
 			worlds.add(world);
+			joinPacketTemplates.invalidate();
 		} else {
 			throw new RuntimeException("World already registered");
 		}
@@ -480,6 +503,7 @@ public final class Limbo {
 				player.teleport(properties.getWorldSpawn());
 			}
 			worlds.remove(world);
+			joinPacketTemplates.invalidate();
 		}
 	}
 
@@ -494,13 +518,7 @@ public final class Limbo {
 		keyedBossBar.getProperties().removeListener(keyedBossBar.getUnsafe().a());
 		keyedBossBar.getUnsafe().b();
 		PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(keyedBossBar, PacketPlayOutBoss.BossBarAction.REMOVE);
-		for (Player player : keyedBossBar.getPlayers()) {
-			try {
-				player.clientConnection.sendPacket(packetPlayOutBoss);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		broadcastPacket(packetPlayOutBoss, keyedBossBar.getPlayers());
 	}
 
 	public Map<Key, KeyedBossBar> getBossBars() {
@@ -526,6 +544,47 @@ public final class Limbo {
 	public Set<Player> getPlayers() {
 		return new HashSet<>(playersByUUID.values());
 	}
+
+	/**
+	 * A live view of the online players, unlike {@link #getPlayers()} nothing is copied.
+	 */
+	public Collection<Player> getPlayersView() {
+		return Collections.unmodifiableCollection(playersByUUID.values());
+	}
+
+	/**
+	 * Sends a packet to every online player, serializing it only once.
+	 */
+	public void broadcastPacket(PacketOut packet) {
+		broadcastPacket(packet, playersByUUID.values(), true);
+	}
+
+	public void broadcastPacket(PacketOut packet, Iterable<? extends Player> players) {
+		broadcastPacket(packet, players, true);
+	}
+
+	/**
+	 * Sends a packet to the given players, the packet is serialized once and the same bytes are framed for every connection
+	 * in the packet's state.
+	 */
+	public void broadcastPacket(PacketOut packet, Iterable<? extends Player> players, boolean flush) {
+		byte[] serialized;
+		try {
+			serialized = packet.serializePacket();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		for (Player player : players) {
+			try {
+				player.clientConnection.sendPacket(packet, serialized, flush);
+			} catch (IOException e) {
+				//a connection that can no longer be written to is closed, the remaining players still get the packet
+				console.sendMessage("Unable to send " + packet.getClass().getSimpleName() + " to " + player.getName() + ", closing the connection: " + e);
+				player.clientConnection.getChannel().close();
+			}
+		}
+	}
 	
 	public Player getPlayer(String name) {
 		return playersByName.get(name);
@@ -606,6 +665,7 @@ public final class Limbo {
 		}
 		
 		tick.waitAndKillThreads(5000);
+		profileService.save();
 		
 		for (Player player : getPlayers()) {
 			player.disconnect(messageManager.getMessage("shutdown"));
@@ -19,6 +19,7 @@
 
 package com.loohp.limbo.bossbar;
 
+import com.loohp.limbo.Limbo;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutBoss;
 import com.loohp.limbo.player.Player;
 import net.kyori.adventure.bossbar.BossBar;
@@ -112,61 +113,31 @@ public class KeyedBossBar {
         @Override
         public void bossBarNameChanged(@NotNull BossBar bar, @NotNull Component oldName, @NotNull Component newName) {
             PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(parent, PacketPlayOutBoss.BossBarAction.UPDATE_NAME);
-            for (Player player : parent.getPlayers()) {
-                try {
-                    player.clientConnection.sendPacket(packetPlayOutBoss);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            Limbo.getInstance().broadcastPacket(packetPlayOutBoss, parent.getPlayers());
         }
 
         @Override
         public void bossBarProgressChanged(@NotNull BossBar bar, float oldProgress, float newProgress) {
             PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(parent, PacketPlayOutBoss.BossBarAction.UPDATE_PROGRESS);
-            for (Player player : parent.getPlayers()) {
-                try {
-                    player.clientConnection.sendPacket(packetPlayOutBoss);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            Limbo.getInstance().broadcastPacket(packetPlayOutBoss, parent.getPlayers());
         }
 
         @Override
         public void bossBarColorChanged(@NotNull BossBar bar, BossBar.@NotNull Color oldColor, BossBar.@NotNull Color newColor) {
             PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(parent, PacketPlayOutBoss.BossBarAction.UPDATE_STYLE);
-            for (Player player : parent.getPlayers()) {
-                try {
-                    player.clientConnection.sendPacket(packetPlayOutBoss);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            Limbo.getInstance().broadcastPacket(packetPlayOutBoss, parent.getPlayers());
         }
 
         @Override
         public void bossBarOverlayChanged(@NotNull BossBar bar, BossBar.@NotNull Overlay oldOverlay, BossBar.@NotNull Overlay newOverlay) {
             PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(parent, PacketPlayOutBoss.BossBarAction.UPDATE_STYLE);
-            for (Player player : parent.getPlayers()) {
-                try {
-                    player.clientConnection.sendPacket(packetPlayOutBoss);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            Limbo.getInstance().broadcastPacket(packetPlayOutBoss, parent.getPlayers());
         }
 
         @Override
         public void bossBarFlagsChanged(@NotNull BossBar bar, @NotNull Set<BossBar.Flag> flagsAdded, @NotNull Set<BossBar.Flag> flagsRemoved) {
             PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(parent, PacketPlayOutBoss.BossBarAction.UPDATE_PROPERTIES);
-            for (Player player : parent.getPlayers()) {
-                try {
-                    player.clientConnection.sendPacket(packetPlayOutBoss);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            Limbo.getInstance().broadcastPacket(packetPlayOutBoss, parent.getPlayers());
         }
 
     }
@@ -23,17 +23,22 @@ import com.loohp.limbo.Console;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.messages.MessagesManager;
 import com.loohp.limbo.player.Player;
+import com.loohp.limbo.scheduler.TickStatistics;
 import com.loohp.limbo.utils.GameMode;
+import com.loohp.limbo.utils.LatencyHistogram;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import net.md_5.bungee.api.ChatColor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class DefaultCommands implements CommandExecutor, TabCompletor {
 	
+	public static final List<String> LABELS = Collections.unmodifiableList(Arrays.asList("version", "spawn", "stop", "kick", "gamemode", "say", "whitelist", "messages", "tps"));
+	
 	@Override
 	public void execute(CommandSender sender, String[] args) {
 		if (args.length == 0) {
@@ -51,6 +56,22 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 			return;
 		}
 
+		if (args[0].equalsIgnoreCase("tps")) {
+			if (sender.hasPermission("limboserver.tps")) {
+				TickStatistics statistics = Limbo.getInstance().getHeartBeat().getStatistics();
+				double[] tps = statistics.getTps();
+				sender.sendMessage(messages.getMessage("command-tps", formatTps(tps[0], statistics.getTargetTps()), formatTps(tps[1], statistics.getTargetTps()), formatTps(tps[2], statistics.getTargetTps())));
+				sender.sendMessage(messages.getMessage("command-tps-mspt", String.format("%.2f", statistics.getMedianMspt()), String.format("%.2f", statistics.getMspt99())));
+				LatencyHistogram joinLatency = Limbo.getInstance().getServerConnection().getJoinLatency();
+				if (joinLatency.getCount() > 0) {
+					sender.sendMessage(messages.getMessage("command-tps-join", String.valueOf(joinLatency.getPercentile(50)), String.valueOf(joinLatency.getPercentile(99)), String.valueOf(joinLatency.getCount())));
+				}
+			} else {
+				sender.sendMessage(messages.getMessage("no-permission"));
+			}
+			return;
+		}
+
 		if (args[0].equalsIgnoreCase("spawn")) {
 			if (sender.hasPermission("limboserver.spawn")) {
 				if (args.length == 1 && sender instanceof Player) {
@@ -200,6 +221,11 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 		}
 	}
 	
+	private static String formatTps(double tps, double target) {
+		ChatColor color = tps >= target * 0.9 ? ChatColor.GREEN : (tps >= target * 0.75 ? ChatColor.YELLOW : ChatColor.RED);
+		return color + String.format("%.2f", Math.min(tps, target)) + (tps > target ? "*" : "");
+	}
+	
 	@Override
 	public List<String> tabComplete(CommandSender sender, String[] args) {
 		List<String> tab = new ArrayList<>();
@@ -220,6 +246,9 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 			if (sender.hasPermission("limboserver.gamemode")) {
 				tab.add("gamemode");
 			}
+			if (sender.hasPermission("limboserver.tps")) {
+				tab.add("tps");
+			}
 			break;
 		case 1:
 			if (sender.hasPermission("limboserver.spawn")) {
@@ -247,6 +276,11 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 					tab.add("gamemode");
 				}
 			}
+			if (sender.hasPermission("limboserver.tps")) {
+				if ("tps".startsWith(args[0].toLowerCase())) {
+					tab.add("tps");
+				}
+			}
 			break;
 		case 2:
 			if (sender.hasPermission("limboserver.kick")) {
@@ -19,6 +19,28 @@
 
 package com.loohp.limbo.events;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public abstract class Event {
 
+	private List<CompletableFuture<?>> intents;
+
+	/**
+	 * Holds back the completion of an event called through {@link EventsManager#callEventAsync(Event)} until the given work is done,
+	 * so handlers can hand slow work to another thread. Intents have no effect on events called synchronously.
+	 */
+	public synchronized void registerIntent(CompletionStage<?> intent) {
+		if (intents == null) {
+			intents = new ArrayList<>();
+		}
+		intents.add(intent.toCompletableFuture());
+	}
+
+	synchronized CompletableFuture<?>[] getIntents() {
+		return intents == null ? new CompletableFuture<?>[0] : intents.toArray(new CompletableFuture<?>[0]);
+	}
+
 }
@@ -20,46 +20,127 @@
 package com.loohp.limbo.events;
 
 import com.loohp.limbo.plugins.LimboPlugin;
+import com.loohp.limbo.utils.ThreadUtils;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class EventsManager {
 	
+	private static final BakedHandler[] NO_HANDLERS = new BakedHandler[0];
+	
+	private static final int DEFAULT_WORKER_THREADS = 4;
+	
 	private List<ListenerPair> listeners;
 	private Map<Listener, RegisteredCachedListener> cachedListeners;
+	private Map<Class<? extends Event>, BakedHandler[]> bakedHandlers;
+	private Executor asyncExecutor;
 	
 	public EventsManager() {
+		this(DEFAULT_WORKER_THREADS);
+	}
+	
+	public EventsManager(int workerThreads) {
 		listeners = new ArrayList<>();
 		cachedListeners = new ConcurrentHashMap<>();
+		bakedHandlers = new ConcurrentHashMap<>();
+		asyncExecutor = ThreadUtils.newWorkerPool("Limbo-Event-", workerThreads, false);
 	}
 	
 	public <T extends Event> T callEvent(T event) {
+		for (BakedHandler handler : getHandlers(event.getClass())) {
+			try {
+				handler.executor.execute(handler.listener, event);
+			} catch (Throwable e) {
+				System.err.println("Error while passing " + event.getClass().getCanonicalName() + " to the plugin \"" + handler.plugin.getName() + "\"");
+				e.printStackTrace();
+			}
+		}
+		return event;
+	}
+	
+	public <T extends Event> CompletableFuture<T> callEventAsync(T event) {
+		return callEventAsync(event, asyncExecutor);
+	}
+	
+	/**
+	 * Calls the handlers on the given executor instead of the calling thread. The returned future completes once they
+	 * have run and every intent registered with {@link Event#registerIntent} has completed, failed intents are logged.
+	 */
+	public <T extends Event> CompletableFuture<T> callEventAsync(T event, Executor executor) {
+		if (!hasListeners(event.getClass())) {
+			return CompletableFuture.completedFuture(event);
+		}
+		return CompletableFuture.supplyAsync(() -> callEvent(event), executor).thenCompose(called -> {
+			CompletableFuture<?>[] intents = called.getIntents();
+			if (intents.length == 0) {
+				return CompletableFuture.completedFuture(called);
+			}
+			return CompletableFuture.allOf(intents).handle((ignore, e) -> {
+				if (e != null) {
+					System.err.println("Error while waiting for an intent on " + called.getClass().getCanonicalName());
+					e.printStackTrace();
+				}
+				return called;
+			});
+		});
+	}
+	
+	public Executor getAsyncExecutor() {
+		return asyncExecutor;
+	}
+	
+	/**
+	 * Whether any handler listens to this exact event class, callers may skip constructing events nobody receives.
+	 */
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return getHandlers(eventClass).length > 0;
+	}
+	
+	private BakedHandler[] getHandlers(Class<? extends Event> eventClass) {
+		BakedHandler[] handlers = bakedHandlers.get(eventClass);
+		if (handlers == null) {
+			synchronized (this) {
+				handlers = bakedHandlers.computeIfAbsent(eventClass, this::bake);
+			}
+		}
+		return handlers;
+	}
+	
+	/**
+	 * Flattens the handlers of every listener into calling order, by priority and then by registration.
+	 */
+	private BakedHandler[] bake(Class<? extends Event> eventClass) {
+		Set<Listener> registered = new LinkedHashSet<>();
+		for (ListenerPair pair : listeners) {
+			registered.add(pair.listener);
+		}
+		List<BakedHandler> handlers = new ArrayList<>();
 		for (EventPriority priority : EventPriority.getPrioritiesInOrder()) {
-			for (Entry<Listener, RegisteredCachedListener> entry : cachedListeners.entrySet()) {
-				for (Method method : entry.getValue().getListeners(event.getClass(), priority)) {
-					try {
-						method.invoke(entry.getKey(), event);
-					} catch (Exception e) {
-						System.err.println("Error while passing " + event.getClass().getCanonicalName() + " to the plugin \"" + entry.getValue().getPlugin().getName() + "\"");
-						e.printStackTrace();
-					}
+			for (Listener listener : registered) {
+				RegisteredCachedListener cachedListener = cachedListeners.get(listener);
+				for (Method method : cachedListener.getListeners(eventClass, priority)) {
+					handlers.add(new BakedHandler(cachedListener.getPlugin(), listener, cachedListener.getExecutor(method)));
 				}
 			}
 		}
-		return event;
+		return handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(NO_HANDLERS);
 	}
 	
-	public void registerEvents(LimboPlugin plugin, Listener listener) {
+	public synchronized void registerEvents(LimboPlugin plugin, Listener listener) {
 		listeners.add(new ListenerPair(plugin, listener));
 		cachedListeners.put(listener, new RegisteredCachedListener(plugin, listener));
+		bakedHandlers.clear();
 	}
 	
-	public void unregisterAllListeners(LimboPlugin plugin) {
+	public synchronized void unregisterAllListeners(LimboPlugin plugin) {
 		listeners.removeIf(each -> {
 			if (each.plugin.equals(plugin)) {
 				cachedListeners.remove(each.listener);
@@ -68,6 +149,21 @@ public class EventsManager {
 				return false;
 			}
 		});
+		bakedHandlers.clear();
+	}
+	
+	private static class BakedHandler {
+		
+		private final LimboPlugin plugin;
+		private final Listener listener;
+		private final EventExecutor executor;
+		
+		private BakedHandler(LimboPlugin plugin, Listener listener, EventExecutor executor) {
+			this.plugin = plugin;
+			this.listener = listener;
+			this.executor = executor;
+		}
+		
 	}
 	
 	protected static class ListenerPair {
@@ -19,8 +19,19 @@
 
 package com.loohp.limbo.events;
 
+import com.loohp.limbo.Limbo;
 import com.loohp.limbo.plugins.LimboPlugin;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,13 +41,46 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class RegisteredCachedListener {
 	
+	private static final MethodType EXECUTOR_TYPE = MethodType.methodType(void.class, Listener.class, Event.class);
+	private static final String LOOKUP_CLASS_SUFFIX = "$LimboLookup";
+	//MethodHandles.privateLookupIn, java 9+
+	private static final Method PRIVATE_LOOKUP_IN;
+	
+	static {
+		Method privateLookupIn;
+		try {
+			privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+		} catch (NoSuchMethodException e) {
+			privateLookupIn = null;
+		}
+		PRIVATE_LOOKUP_IN = privateLookupIn;
+	}
+	
+	private static volatile boolean privateLookupsRejected = false;
+	
+	//full privilege lookups of a class defined next to the listener class, for runtimes that reject private lookups into other loaders
+	private static final ClassValue<MethodHandles.Lookup> LISTENER_LOOKUPS = new ClassValue<MethodHandles.Lookup>() {
+		@Override
+		protected MethodHandles.Lookup computeValue(Class<?> owner) {
+			try {
+				return defineLookup(owner);
+			} catch (ReflectiveOperationException | IOException e) {
+				throw new IllegalStateException("Unable to define a lookup class for " + owner.getName(), e);
+			}
+		}
+	};
+	
 	private LimboPlugin plugin;
+	private Listener listener;
 	private Map<Class<? extends Event>, Map<EventPriority, List<Method>>> listeners;
+	private Map<Method, EventExecutor> executors;
 	
 	@SuppressWarnings("unchecked")
 	public RegisteredCachedListener(LimboPlugin plugin, Listener listener) {
 		this.plugin = plugin;
+		this.listener = listener;
 		this.listeners = new ConcurrentHashMap<>();
+		this.executors = new ConcurrentHashMap<>();
 		for (Method method : listener.getClass().getMethods()) {
 			if (method.isAnnotationPresent(EventHandler.class) && method.getParameterCount() == 1 && Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
 				Class<? extends Event> eventClass = (Class<? extends Event>) method.getParameterTypes()[0];
@@ -46,14 +90,167 @@ public class RegisteredCachedListener {
 				mapping.putIfAbsent(priority, new ArrayList<>());
 				List<Method> list = mapping.get(priority);
 				list.add(method);
+				executors.put(method, createExecutor(method));
 			}
 		}
 	}
 	
+	/**
+	 * Binds the handler method to a generated {@link EventExecutor}. Handlers of classes the server class loader cannot see,
+	 * such as those of plugins, are linked through a private lookup in the handler's class, or on runtimes that refuse such
+	 * a lookup, through a small class defined in the handler's own class loader.
+	 * Should that fail the handler is called through an erased method handle instead.
+	 */
+	private static EventExecutor createExecutor(Method method) {
+		Class<?> owner = method.getDeclaringClass();
+		try {
+			if (isVisible(owner) && isVisible(method.getParameterTypes()[0])) {
+				return generateExecutor(MethodHandles.lookup(), method);
+			}
+			if (PRIVATE_LOOKUP_IN != null && !privateLookupsRejected) {
+				try {
+					return generateExecutor((MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, owner, MethodHandles.lookup()), method);
+				} catch (LambdaConversionException e) {
+					//java 14+ only links lambdas for lookups with module access, which a lookup into another loader lacks
+					privateLookupsRejected = true;
+				}
+			}
+			return generateExecutor(LISTENER_LOOKUPS.get(owner), method);
+		} catch (ReflectiveOperationException | LambdaConversionException | RuntimeException | LinkageError e) {
+			log("Unable to generate an event executor for " + method + ", falling back to a method handle: " + e);
+		}
+		try {
+			MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(EXECUTOR_TYPE);
+			return (listener, event) -> {
+				handle.invokeExact(listener, event);
+			};
+		} catch (IllegalAccessException e) {
+			log("Unable to access " + method + ", falling back to reflection: " + e);
+		}
+		return (listener, event) -> {
+			try {
+				method.invoke(listener, event);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		};
+	}
+	
+	private static EventExecutor generateExecutor(MethodHandles.Lookup lookup, Method method) throws IllegalAccessException, LambdaConversionException {
+		MethodHandle handle = lookup.unreflect(method);
+		CallSite callSite = LambdaMetafactory.metafactory(lookup, "execute", MethodType.methodType(EventExecutor.class), EXECUTOR_TYPE, handle, MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]));
+		try {
+			return (EventExecutor) callSite.getTarget().invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static synchronized MethodHandles.Lookup defineLookup(Class<?> owner) throws ReflectiveOperationException, IOException {
+		ClassLoader loader = owner.getClassLoader();
+		String name = owner.getName() + LOOKUP_CLASS_SUFFIX;
+		Class<?> lookupClass;
+		try {
+			lookupClass = Class.forName(name, false, loader);
+		} catch (ClassNotFoundException notDefined) {
+			byte[] bytes = lookupClassBytes(name.replace('.', '/'));
+			if (PRIVATE_LOOKUP_IN != null) {
+				//defines the class in the package of the listener
+				Method defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+				lookupClass = (Class<?>) defineClass.invoke(PRIVATE_LOOKUP_IN.invoke(null, owner, MethodHandles.lookup()), (Object) bytes);
+			} else {
+				Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+				defineClass.setAccessible(true);
+				lookupClass = (Class<?>) defineClass.invoke(loader, name, bytes, 0, bytes.length);
+			}
+		}
+		return (MethodHandles.Lookup) lookupClass.getMethod("lookup").invoke(null);
+	}
+	
+	/**
+	 * Assembles a class with a single method, public static Lookup lookup() { return MethodHandles.lookup(); }
+	 */
+	private static byte[] lookupClassBytes(String internalName) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(52);
+		out.writeShort(12);
+		out.writeByte(1);
+		out.writeUTF(internalName);
+		out.writeByte(7);
+		out.writeShort(1);
+		out.writeByte(1);
+		out.writeUTF("java/lang/Object");
+		out.writeByte(7);
+		out.writeShort(3);
+		out.writeByte(1);
+		out.writeUTF("java/lang/invoke/MethodHandles");
+		out.writeByte(7);
+		out.writeShort(5);
+		out.writeByte(1);
+		out.writeUTF("lookup");
+		out.writeByte(1);
+		out.writeUTF("()Ljava/lang/invoke/MethodHandles$Lookup;");
+		out.writeByte(12);
+		out.writeShort(7);
+		out.writeShort(8);
+		out.writeByte(10);
+		out.writeShort(6);
+		out.writeShort(9);
+		out.writeByte(1);
+		out.writeUTF("Code");
+		//public final super, this class, super class, no interfaces and no fields
+		out.writeShort(0x0031);
+		out.writeShort(2);
+		out.writeShort(4);
+		out.writeShort(0);
+		out.writeShort(0);
+		//one public static method, its code is invokestatic MethodHandles.lookup and areturn
+		out.writeShort(1);
+		out.writeShort(0x0009);
+		out.writeShort(7);
+		out.writeShort(8);
+		out.writeShort(1);
+		out.writeShort(11);
+		out.writeInt(16);
+		out.writeShort(1);
+		out.writeShort(0);
+		out.writeInt(4);
+		out.write(new byte[] {(byte) 0xB8, 0x00, 0x0A, (byte) 0xB0});
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(0);
+		return bytes.toByteArray();
+	}
+	
+	private static void log(String message) {
+		Limbo.getInstance().getConsole().sendMessage(message);
+	}
+	
+	private static boolean isVisible(Class<?> clazz) {
+		try {
+			return Class.forName(clazz.getName(), false, RegisteredCachedListener.class.getClassLoader()) == clazz;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+	
 	public LimboPlugin getPlugin() {
 		return plugin;
 	}
 	
+	public Listener getListener() {
+		return listener;
+	}
+	
+	public EventExecutor getExecutor(Method method) {
+		return executors.get(method);
+	}
+	
 	public List<Method> getListeners(Class<? extends Event> eventClass, EventPriority priority) {
 		Map<EventPriority, List<Method>> mapping = listeners.get(eventClass);
 		if (mapping == null) {
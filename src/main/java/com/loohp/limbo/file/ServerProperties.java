@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import com.loohp.limbo.Console;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.location.Location;
+import com.loohp.limbo.network.ServerConnection;
 import com.loohp.limbo.utils.ForwardingUtils;
 import com.loohp.limbo.utils.GameMode;
 import com.loohp.limbo.world.World;
@@ -44,6 +45,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
@@ -76,8 +78,16 @@ public class ServerProperties {
 	private ForwardingUtils.Type forwardType;
 	private List<String> forwardingSecrets;
 	private int viewDistance;
+	private int chunksPerTick;
 	private double ticksPerSecond;
 	private boolean handshakeVerbose;
+	private ServerConnection.Transport networkTransport;
+	private int networkIoThreads;
+	private boolean virtualThreads;
+	private int asyncWorkerThreads;
+	private int networkWorkerThreads;
+	private int eventWorkerThreads;
+	private int compressionThreshold;
 	private boolean enforceWhitelist;
 	private Map<UUID, String> whitelist;
 	
@@ -171,8 +181,16 @@ public class ServerProperties {
 		}
 
 		viewDistance = Integer.parseInt(prop.getProperty("view-distance"));
+		chunksPerTick = Integer.parseInt(prop.getProperty("chunks-per-tick"));
 		ticksPerSecond = Double.parseDouble(prop.getProperty("ticks-per-second"));
 		handshakeVerbose = Boolean.parseBoolean(prop.getProperty("handshake-verbose"));
+		networkTransport = ServerConnection.Transport.valueOf(prop.getProperty("network-transport").toUpperCase(Locale.ROOT));
+		networkIoThreads = Integer.parseInt(prop.getProperty("network-io-threads"));
+		virtualThreads = Boolean.parseBoolean(prop.getProperty("virtual-threads"));
+		asyncWorkerThreads = Integer.parseInt(prop.getProperty("async-worker-threads"));
+		networkWorkerThreads = Integer.parseInt(prop.getProperty("network-worker-threads"));
+		eventWorkerThreads = Integer.parseInt(prop.getProperty("event-worker-threads"));
+		compressionThreshold = Integer.parseInt(prop.getProperty("network-compression-threshold"));
 
 		resourcePackLink = prop.getProperty("resource-pack");
 		resourcePackSHA1 = prop.getProperty("resource-pack-sha1");
@@ -361,6 +379,10 @@ public class ServerProperties {
 	public int getViewDistance() {
 		return viewDistance;
 	}
+
+	public int getChunksPerTick() {
+		return chunksPerTick;
+	}
 	
 	public double getDefinedTicksPerSecond() {
 		return ticksPerSecond;
@@ -370,6 +392,34 @@ public class ServerProperties {
 		return handshakeVerbose;
 	}
 
+	public ServerConnection.Transport getNetworkTransport() {
+		return networkTransport;
+	}
+
+	public int getNetworkIoThreads() {
+		return networkIoThreads;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public int getAsyncWorkerThreads() {
+		return asyncWorkerThreads;
+	}
+
+	public int getNetworkWorkerThreads() {
+		return networkWorkerThreads;
+	}
+
+	public int getEventWorkerThreads() {
+		return eventWorkerThreads;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
 	public boolean enforceWhitelist() {
 		return enforceWhitelist;
 	}
@@ -25,27 +25,104 @@ import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.Pair;
 import net.kyori.adventure.key.Key;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class Channel implements AutoCloseable {
 
+    public static final int MAX_UNCOMPRESSED_SIZE = 8388608;
+
+    public static final int FLUSH_THRESHOLD = 65536;
+    public static final long MAX_FLUSH_DELAY = 10;
+
+    //frame lengths are back-patched into a fixed three byte VarInt
+    private static final int FRAME_LENGTH_SIZE = 3;
+
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "Limbo-Flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final ClientConnection client;
     private final List<Pair<Key, ChannelPacketHandler>> handlers;
     private final AtomicBoolean valid;
     protected final DataInputStream input;
     protected final DataOutputStream output;
+    protected final WritableByteChannel sink;
+
+    private volatile int compressionThreshold;
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] deflateBuffer;
+    private volatile PacketBuffer pending;
+    private final boolean blockingSink;
+    //the append lock guards the pending buffer and is never held during I/O, the write lock orders the socket writes
+    private final ReentrantLock appendLock;
+    private final ReentrantLock writeLock;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean flushQueued;
+    private volatile Thread writer;
+    private volatile boolean closeRequested;
 
     public Channel(ClientConnection client, DataInputStream input, DataOutputStream output) {
+        this(client, input, output, Channels.newChannel(output), true);
+    }
+
+    /**
+     * Frames are written to the sink, which must consume every byte it is given without blocking. The output is kept for raw writes outside of framing.
+     */
+    public Channel(ClientConnection client, DataInputStream input, DataOutputStream output, WritableByteChannel sink) {
+        this(client, input, output, sink, false);
+    }
+
+    private Channel(ClientConnection client, DataInputStream input, DataOutputStream output, WritableByteChannel sink, boolean blockingSink) {
         this.client = client;
         this.input = input;
         this.output = output;
+        this.sink = sink;
+        this.blockingSink = blockingSink;
+        this.appendLock = new ReentrantLock();
+        this.writeLock = new ReentrantLock();
+        this.flushQueued = new AtomicBoolean(false);
         this.handlers = new CopyOnWriteArrayList<>();
         this.valid = new AtomicBoolean(true);
+        this.compressionThreshold = -1;
+        this.flushScheduled = new AtomicBoolean(false);
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Switches the framing of both directions to the compressed format, a negative threshold disables compression.
+     * Must be called right after the Set Compression packet has been written.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold >= 0 && deflater == null) {
+            deflater = new Deflater();
+            inflater = new Inflater();
+            deflateBuffer = new byte[8192];
+        }
+        this.compressionThreshold = compressionThreshold;
     }
 
     private void ensureOpen() {
@@ -71,26 +148,80 @@ public class Channel implements AutoCloseable {
     }
 
     protected PacketIn readPacket(int size) throws IOException {
-        PacketIn packet = null;
+        PacketIn packet;
         do {
             ensureOpen();
             size = size < 0 ? DataTypeIO.readVarInt(input) : size;
-            int packetId = DataTypeIO.readVarInt(input);
-            ChannelPacketRead read = new ChannelPacketRead(size, packetId, input);
-            for (Pair<Key, ChannelPacketHandler> pair : handlers) {
-                read = pair.getSecond().read(read);
-                if (read == null) {
-                    packet = null;
-                    break;
-                }
-                packet = read.getReadPacket();
+            if (compressionThreshold >= 0) {
+                byte[] frame = new byte[size];
+                input.readFully(frame);
+                packet = decodeFrame(frame);
+            } else {
+                packet = decodePacket(size, input);
             }
             size = -1;
         } while (packet == null);
         return packet;
     }
 
+    protected PacketIn decodeFrame(byte[] frame) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(frame));
+        if (compressionThreshold < 0) {
+            return decodePacket(frame.length, input);
+        }
+        int dataLength = DataTypeIO.readVarInt(input);
+        int offset = DataTypeIO.getVarIntLength(dataLength);
+        if (dataLength == 0) {
+            return decodePacket(frame.length - offset, input);
+        }
+        if (dataLength < compressionThreshold || dataLength > MAX_UNCOMPRESSED_SIZE) {
+            throw new IOException("Badly compressed packet, size of " + dataLength + " is invalid");
+        }
+        byte[] data = new byte[dataLength];
+        try {
+            inflater.setInput(frame, offset, frame.length - offset);
+            int inflated = inflater.inflate(data);
+            if (inflated != dataLength) {
+                throw new IOException("Badly compressed packet, expected " + dataLength + " bytes but got " + inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Badly compressed packet", e);
+        } finally {
+            inflater.reset();
+        }
+        return decodePacket(dataLength, new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    protected PacketIn decodePacket(int size, DataInputStream input) throws IOException {
+        int packetId = DataTypeIO.readVarInt(input);
+        ChannelPacketRead read = new ChannelPacketRead(size, packetId, input);
+        PacketIn packet = null;
+        for (Pair<Key, ChannelPacketHandler> pair : handlers) {
+            read = pair.getSecond().read(read);
+            if (read == null) {
+                return null;
+            }
+            packet = read.getReadPacket();
+        }
+        return packet;
+    }
+
     protected boolean writePacket(PacketOut packet) throws IOException {
+        return writePacket(packet, true);
+    }
+
+    /**
+     * Frames the packet into the outbound buffer, which is written out on {@link #flush()}.
+     * Unflushed frames are written once they exceed {@link #FLUSH_THRESHOLD} bytes or after {@link #MAX_FLUSH_DELAY} milliseconds.
+     */
+    protected boolean writePacket(PacketOut packet, boolean flush) throws IOException {
+        return writePacket(packet, null, flush);
+    }
+
+    /**
+     * Writes a packet whose bytes were already serialized, they are used as long as no handler replaces the packet.
+     */
+    protected boolean writePacket(PacketOut packet, byte[] serialized, boolean flush) throws IOException {
         if (client.getClientState() == ClientConnection.ClientState.DISCONNECTED) {
             return false;
         }
@@ -105,16 +236,249 @@ public class Channel implements AutoCloseable {
                 return false;
             }
         }
-        packet = write.getPacket();
-        byte[] packetByte = packet.serializePacket();
-        writePacketRaw(packetByte);
+        if (write.getPacket() != packet) {
+            packet = write.getPacket();
+            serialized = null;
+        }
+        int compressionThreshold = this.compressionThreshold;
+        int queued;
+        appendLock.lock();
+        try {
+            PacketBuffer buffer = pendingBuffer();
+            int start = beginFrame(buffer, compressionThreshold);
+            try {
+                if (serialized == null) {
+                    packet.write(buffer.getDataOutput());
+                } else {
+                    buffer.write(serialized);
+                }
+                writeFrame(buffer, start, compressionThreshold);
+            } catch (Throwable e) {
+                buffer.truncate(start);
+                throw e;
+            }
+            queued = buffer.position();
+        } finally {
+            appendLock.unlock();
+        }
+        afterAppend(queued, flush);
         return true;
     }
 
     public void writePacketRaw(byte[] packetByte) throws IOException {
-        DataTypeIO.writeVarInt(output, packetByte.length);
-        output.write(packetByte);
-        output.flush();
+        writePacketRaw(packetByte, true);
+    }
+
+    public void writePacketRaw(byte[] packetByte, boolean flush) throws IOException {
+        int compressionThreshold = this.compressionThreshold;
+        int queued;
+        appendLock.lock();
+        try {
+            PacketBuffer buffer = pendingBuffer();
+            int start = beginFrame(buffer, compressionThreshold);
+            try {
+                buffer.write(packetByte);
+                writeFrame(buffer, start, compressionThreshold);
+            } catch (Throwable e) {
+                buffer.truncate(start);
+                throw e;
+            }
+            queued = buffer.position();
+        } finally {
+            appendLock.unlock();
+        }
+        afterAppend(queued, flush);
+    }
+
+    private void afterAppend(int queued, boolean flush) throws IOException {
+        if (flush) {
+            flush();
+        } else if (queued >= FLUSH_THRESHOLD) {
+            requestFlush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes every queued frame to the socket, blocking the caller until they are written.
+     */
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            writePending();
+        } finally {
+            writeLock.unlock();
+        }
+        //frames queued by threads that found the write lock taken are picked up here
+        requestFlush();
+    }
+
+    /**
+     * Gets the queued frames written without ever blocking the caller. A non-blocking sink is written right away unless
+     * another thread is writing, a blocking one is handed to the connection's own writer thread, so a client that stops
+     * reading only ever stalls itself. Failed writes close the connection.
+     */
+    public void requestFlush() {
+        if (!blockingSink) {
+            tryWritePending();
+        } else if (pending != null && valid.get()) {
+            flushQueued.set(true);
+            LockSupport.unpark(writer());
+        }
+    }
+
+    private Thread writer() {
+        Thread writer = this.writer;
+        if (writer == null) {
+            synchronized (this) {
+                writer = this.writer;
+                if (writer == null) {
+                    this.writer = writer = client.newWriterThread(this::runWriter);
+                    writer.start();
+                }
+            }
+        }
+        return writer;
+    }
+
+    private void runWriter() {
+        while (valid.get()) {
+            if (flushQueued.getAndSet(false)) {
+                tryWritePending();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void tryWritePending() {
+        //whoever holds the write lock checks for new frames once it is released
+        while (pending != null && valid.get() && writeLock.tryLock()) {
+            try {
+                writePending();
+            } catch (IOException e) {
+                close();
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        if (closeRequested && pending == null) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the channel once the queued frames have been written, without blocking the caller.
+     */
+    public void closeAfterFlush() {
+        closeRequested = true;
+        if (pending == null) {
+            close();
+        } else {
+            requestFlush();
+        }
+    }
+
+    private void writePending() throws IOException {
+        PacketBuffer buffer;
+        while ((buffer = takePending()) != null) {
+            try {
+                ByteBuffer frames = buffer.nioBuffer(0);
+                while (frames.hasRemaining()) {
+                    sink.write(frames);
+                }
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    private PacketBuffer takePending() {
+        appendLock.lock();
+        try {
+            PacketBuffer buffer = pending;
+            pending = null;
+            return buffer;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public boolean hasPendingWrites() {
+        return pending != null;
+    }
+
+    private PacketBuffer pendingBuffer() {
+        PacketBuffer buffer = pending;
+        if (buffer == null) {
+            pending = buffer = PacketBuffer.acquire();
+        }
+        return buffer;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            FLUSH_SCHEDULER.schedule(() -> {
+                flushScheduled.set(false);
+                requestFlush();
+            }, MAX_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private int beginFrame(PacketBuffer buffer, int compressionThreshold) {
+        int start = buffer.position();
+        //the data length of compressed frames is a single zero byte unless the frame ends up being deflated
+        buffer.skip(compressionThreshold < 0 ? FRAME_LENGTH_SIZE : FRAME_LENGTH_SIZE + 1);
+        return start;
+    }
+
+    private void writeFrame(PacketBuffer buffer, int start, int compressionThreshold) throws IOException {
+        if (compressionThreshold < 0) {
+            setFrameLength(buffer, start);
+        } else {
+            int dataStart = start + FRAME_LENGTH_SIZE + 1;
+            int dataLength = buffer.position() - dataStart;
+            if (dataLength < compressionThreshold) {
+                buffer.setByte(dataStart - 1, 0);
+                setFrameLength(buffer, start);
+            } else {
+                byte[] data = buffer.getBytes(dataStart, dataLength);
+                buffer.truncate(start + FRAME_LENGTH_SIZE);
+                DataTypeIO.writeVarInt(buffer.getDataOutput(), dataLength);
+                synchronized (deflater) {
+                    //close ends the deflater under this monitor, so the check cannot go stale before deflating
+                    if (!valid.get()) {
+                        throw new IOException("Connection closed");
+                    }
+                    buffer.write(deflateBuffer, 0, deflate(data));
+                }
+                setFrameLength(buffer, start);
+            }
+        }
+    }
+
+    private void setFrameLength(PacketBuffer buffer, int start) throws IOException {
+        int length = buffer.position() - start - FRAME_LENGTH_SIZE;
+        if (length > NioConnection.MAX_FRAME_SIZE) {
+            throw new IOException("Packet of " + length + " bytes is too large to be framed");
+        }
+        buffer.setVarInt21(start, length);
+    }
+
+    private int deflate(byte[] data) {
+        deflater.setInput(data);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflateBuffer.length) {
+                deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length << 1);
+            }
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+        }
+        deflater.reset();
+        return length;
     }
 
     @Override
@@ -125,6 +489,15 @@ public class Channel implements AutoCloseable {
                 output.close();
             } catch (Exception ignore) {
             }
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+            if (deflater != null) {
+                synchronized (deflater) {
+                    deflater.end();
+                }
+                inflater.end();
+            }
         }
     }
 
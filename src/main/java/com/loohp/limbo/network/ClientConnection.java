@@ -41,16 +41,20 @@ import com.loohp.limbo.inventory.AnvilInventory;
 import com.loohp.limbo.inventory.Inventory;
 import com.loohp.limbo.inventory.ItemStack;
 import com.loohp.limbo.location.Location;
+import com.loohp.limbo.network.JoinPacketTemplates.LoginTemplate;
+import com.loohp.limbo.network.JoinPacketTemplates.PacketTemplate;
 import com.loohp.limbo.network.protocol.packets.ClientboundFinishConfigurationPacket;
-import com.loohp.limbo.network.protocol.packets.ClientboundRegistryDataPacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundPlayerInfoRemovePacket;
 import com.loohp.limbo.network.protocol.packets.Packet;
 import com.loohp.limbo.network.protocol.packets.PacketHandshakingIn;
+import com.loohp.limbo.network.protocol.packets.PacketDecoder;
 import com.loohp.limbo.network.protocol.packets.PacketIn;
 import com.loohp.limbo.network.protocol.packets.PacketLoginInLoginStart;
 import com.loohp.limbo.network.protocol.packets.PacketLoginInPluginMessaging;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutDisconnect;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutLoginSuccess;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutPluginMessaging;
+import com.loohp.limbo.network.protocol.packets.PacketLoginOutSetCompression;
 import com.loohp.limbo.network.protocol.packets.PacketOut;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockDig;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockPlace;
@@ -94,20 +98,19 @@ import com.loohp.limbo.network.protocol.packets.PacketStatusInRequest;
 import com.loohp.limbo.network.protocol.packets.PacketStatusOutPong;
 import com.loohp.limbo.network.protocol.packets.PacketStatusOutResponse;
 import com.loohp.limbo.network.protocol.packets.ServerboundChatCommandPacket;
+import com.loohp.limbo.network.protocol.packets.ServerboundChunkBatchReceivedPacket;
 import com.loohp.limbo.network.protocol.packets.ServerboundFinishConfigurationPacket;
 import com.loohp.limbo.network.protocol.packets.ServerboundLoginAcknowledgedPacket;
 import com.loohp.limbo.player.Player;
 import com.loohp.limbo.player.PlayerInteractManager;
 import com.loohp.limbo.player.PlayerInventory;
 import com.loohp.limbo.utils.BungeecordAdventureConversionUtils;
-import com.loohp.limbo.utils.CheckedBiConsumer;
 import com.loohp.limbo.utils.CustomStringUtils;
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.DeclareCommands;
 import com.loohp.limbo.utils.ForwardingUtils;
 import com.loohp.limbo.utils.GameMode;
 import com.loohp.limbo.utils.InventoryClickUtils;
-import com.loohp.limbo.utils.MojangAPIUtils;
 import com.loohp.limbo.utils.MojangAPIUtils.SkinResponse;
 import com.loohp.limbo.world.BlockPosition;
 import com.loohp.limbo.world.BlockState;
@@ -124,36 +127,40 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Constructor;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
-public class ClientConnection extends Thread {
+public class ClientConnection implements Runnable {
 
     private static final Key DEFAULT_HANDLER_NAMESPACE = Key.key("default");
-    private static final String BRAND_ANNOUNCE_CHANNEL = Key.key("brand").toString();
+    private static final long KEEP_ALIVE_INTERVAL = 15000;
+    private static final long KEEP_ALIVE_TIMEOUT = 15000;
+    private static final long SKIN_LOOKUP_TIMEOUT = 1000;
 
     private final Random random = new Random();
     private final Socket clientSocket;
@@ -162,20 +169,39 @@ public class ClientConnection extends Thread {
     private volatile ClientState state;
 
     private Player player;
-    private TimerTask keepAliveTask;
     private AtomicLong lastPacketTimestamp;
     private AtomicLong lastKeepAlivePayLoad;
+    private volatile long lastKeepAliveTime;
+    private final AtomicBoolean keepAliveTimedOut;
+    private volatile int ping;
     private InetAddress inetAddress;
-    private boolean ready;
+    private volatile boolean ready;
+    private boolean established;
+    private final AtomicBoolean terminated;
+    private final ReentrantLock sendLock;
+    private volatile CompletableFuture<Void> pendingStatus;
+    private long handshakeTime;
+
+    private int loginMessageId;
+    private UUID bungeeUUID;
+    private SkinResponse forwardedSkin;
+    private CompletableFuture<SkinResponse> skinLookup;
 
     public ClientConnection(Socket clientSocket) {
         this.clientSocket = clientSocket;
         this.inetAddress = clientSocket.getInetAddress();
         this.lastPacketTimestamp = new AtomicLong(-1);
         this.lastKeepAlivePayLoad = new AtomicLong(-1);
+        this.lastKeepAliveTime = 0;
+        this.keepAliveTimedOut = new AtomicBoolean(false);
+        this.ping = 0;
         this.channel = null;
         this.running = false;
         this.ready = false;
+        this.established = false;
+        this.terminated = new AtomicBoolean(false);
+        this.sendLock = new ReentrantLock();
+        this.pendingStatus = CompletableFuture.completedFuture(null);
     }
 
     public InetAddress getInetAddress() {
@@ -198,8 +224,11 @@ public class ClientConnection extends Thread {
         this.lastPacketTimestamp.set(payLoad);
     }
 
-    public TimerTask getKeepAliveTask() {
-        return this.keepAliveTask;
+    /**
+     * The round trip time of keep-alives in milliseconds, smoothed like the vanilla server does.
+     */
+    public int getPing() {
+        return ping;
     }
 
     public Player getPlayer() {
@@ -231,12 +260,58 @@ public class ClientConnection extends Thread {
         sendPacket(packet);
     }
 
-    public synchronized void sendPacket(PacketOut packet) throws IOException {
-        if (channel.writePacket(packet)) {
-            setLastPacketTimestamp(System.currentTimeMillis());
+    public void sendPacket(PacketOut packet) throws IOException {
+        sendPacket(packet, true);
+    }
+
+    /**
+     * Sends a packet, without flushing it is queued with other unflushed packets and written by the next {@link #flush()},
+     * at the latest after {@link Channel#MAX_FLUSH_DELAY} milliseconds.
+     */
+    public void sendPacket(PacketOut packet, boolean flush) throws IOException {
+        sendPacket(packet, null, flush);
+    }
+
+    /**
+     * Sends a packet using bytes previously obtained from its {@link PacketOut#serializePacket()}, so a packet sent to many connections is serialized once.
+     */
+    public void sendPacket(PacketOut packet, byte[] serialized, boolean flush) throws IOException {
+        //a lock rather than a monitor, so virtual threads do not pin their carrier, the socket write happens outside of it
+        sendLock.lock();
+        try {
+            if (channel.writePacket(packet, serialized, false)) {
+                setLastPacketTimestamp(System.currentTimeMillis());
+            }
+        } finally {
+            sendLock.unlock();
+        }
+        if (flush) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Writes the queued packets, blocking until they are written.
+     */
+    public void flush() throws IOException {
+        if (channel != null) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Gets the queued packets written without blocking the calling thread.
+     */
+    public void requestFlush() {
+        if (channel != null) {
+            channel.requestFlush();
         }
     }
 
+    Thread newWriterThread(Runnable writer) {
+        return Limbo.getInstance().getServerConnection().getWriterThreadFactory().newThread(writer);
+    }
+
     public void disconnect(BaseComponent[] reason) {
         disconnect(BungeecordAdventureConversionUtils.toComponent(reason));
     }
@@ -247,10 +322,23 @@ public class ClientConnection extends Thread {
             sendPacket(packet);
         } catch (IOException ignored) {
         }
+        closeConnection();
+    }
+
+    /**
+     * Disconnects a client which stopped answering keep-alives, the disconnect packet is only queued
+     * and the connection closed once it has been written, so the caller never blocks on the socket.
+     */
+    protected void timeOut() {
         try {
-            clientSocket.close();
+            sendPacket(new PacketPlayOutDisconnect(Component.translatable("disconnect.timeout")), false);
         } catch (IOException ignored) {
         }
+        if (channel != null) {
+            channel.closeAfterFlush();
+        } else {
+            closeConnection();
+        }
     }
 
     private void disconnectDuringLogin(BaseComponent[] reason) {
@@ -268,14 +356,11 @@ public class ClientConnection extends Thread {
             sendPacket(packet);
         } catch (IOException ignored) {
         }
-        try {
-            clientSocket.close();
-        } catch (IOException ignored) {
-        }
+        closeConnection();
     }
 
-    private void setChannel(DataInputStream input, DataOutputStream output) {
-        this.channel = new Channel(this, input, output);
+    private void setChannel(DataInputStream input, DataOutputStream output, WritableByteChannel sink) {
+        this.channel = new Channel(this, input, output, sink);
 
         this.channel.addHandlerBefore(DEFAULT_HANDLER_NAMESPACE, new ChannelPacketHandler() {
             @Override
@@ -287,41 +372,12 @@ public class ClientConnection extends Thread {
                     DataInput input = read.getDataInput();
                     int size = read.getSize();
                     int packetId = read.getPacketId();
-                    Class<? extends PacketIn> packetType;
-                    switch (state) {
-                        case HANDSHAKE:
-                            packetType = Packet.getHandshakeIn().get(packetId);
-                            break;
-                        case STATUS:
-                            packetType = Packet.getStatusIn().get(packetId);
-                            break;
-                        case LOGIN:
-                            packetType = Packet.getLoginIn().get(packetId);
-                            break;
-                        case CONFIGURATION:
-                            packetType = Packet.getConfigurationIn().get(packetId);
-                            break;
-                        case PLAY:
-                            packetType = Packet.getPlayIn().get(packetId);
-                            break;
-                        default:
-                            throw new IllegalStateException("Illegal ClientState!");
-                    }
-                    if (packetType == null) {
+                    PacketDecoder decoder = Packet.getDecoder(state, packetId);
+                    if (decoder == null) {
                         input.skipBytes(size - DataTypeIO.getVarIntLength(packetId));
                         return null;
                     }
-                    Constructor<?>[] constructors = packetType.getConstructors();
-                    Constructor<?> constructor = Arrays.stream(constructors).filter(each -> each.getParameterCount() > 0 && each.getParameterTypes()[0].equals(DataInputStream.class)).findFirst().orElse(null);
-                    if (constructor == null) {
-                        throw new NoSuchMethodException(packetType + " has no valid constructors!");
-                    } else if (constructor.getParameterCount() == 1) {
-                        read.setPacket((PacketIn) constructor.newInstance(input));
-                    } else if (constructor.getParameterCount() == 3) {
-                        read.setPacket((PacketIn) constructor.newInstance(input, size, packetId));
-                    } else {
-                        throw new NoSuchMethodException(packetType + " has no valid constructors!");
-                    }
+                    read.setPacket(decoder.decode((DataInputStream) input, size, packetId));
                     return super.read(read);
                 } catch (Exception e) {
                     throw new RuntimeException("Unable to read packet", e);
@@ -330,548 +386,715 @@ public class ClientConnection extends Thread {
         });
     }
 
-    @SuppressWarnings("deprecation")
-    @Override
-    public void run() {
+    protected void open(DataInputStream input, DataOutputStream output) {
+        open(input, output, Channels.newChannel(output));
+    }
+
+    protected void open(DataInputStream input, DataOutputStream output, WritableByteChannel sink) {
         running = true;
         state = ClientState.HANDSHAKE;
+        setChannel(input, output, sink);
+    }
+
+    protected void establish() {
+        if (!established) {
+            established = true;
+            Limbo.getInstance().getEventsManager().callEvent(new ConnectionEstablishedEvent(this));
+        }
+    }
+
+    private void closeConnection() {
+        if (channel != null) {
+            try {
+                flush();
+            } catch (IOException ignored) {
+            }
+            channel.close();
+        } else {
+            try {
+                clientSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void run() {
         try {
             clientSocket.setKeepAlive(true);
-            setChannel(new DataInputStream(clientSocket.getInputStream()), new DataOutputStream(clientSocket.getOutputStream()));
+            open(new DataInputStream(clientSocket.getInputStream()), new DataOutputStream(clientSocket.getOutputStream()));
             int handShakeSize = DataTypeIO.readVarInt(channel.input);
 
             //legacy ping
             if (handShakeSize == 0xFE) {
-                ServerProperties properties = Limbo.getInstance().getServerProperties();
-
-                state = ClientState.LEGACY;
-                channel.output.writeByte(255);
-                String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
-                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Legacy Status has pinged");
-                ServerProperties p = Limbo.getInstance().getServerProperties();
-                StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayers().size(), p.getFavicon().orElse(null)));
-                String response = Limbo.getInstance().buildLegacyPingResponse(event.getVersion(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline());
-                byte[] bytes = response.getBytes(StandardCharsets.UTF_16BE);
-                channel.output.writeShort(response.length());
-                channel.output.write(bytes);
-
-                channel.close();
-                clientSocket.close();
-                state = ClientState.DISCONNECTED;
+                handleLegacyPing();
+            } else {
+                establish();
+                handlePacket(channel.readPacket(handShakeSize));
+                while (!clientSocket.isClosed()) {
+                    handlePacket(channel.readPacket());
+                }
             }
+        } catch (Exception ignored) {
+        }
+        terminate();
+    }
 
-            Limbo.getInstance().getEventsManager().callEvent(new ConnectionEstablishedEvent(this));
+    protected void handleLegacyPing() throws IOException {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
 
-            PacketHandshakingIn handshake = (PacketHandshakingIn) channel.readPacket(handShakeSize);
+        state = ClientState.LEGACY;
+        channel.output.writeByte(255);
+        String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
+        Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Legacy Status has pinged");
+        ServerProperties p = Limbo.getInstance().getServerProperties();
+        StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayers().size(), p.getFavicon().orElse(null)));
+        String response = Limbo.getInstance().buildLegacyPingResponse(event.getVersion(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline());
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_16BE);
+        channel.output.writeShort(response.length());
+        channel.output.write(bytes);
+
+        closeConnection();
+    }
 
-            boolean isBungeecord = Limbo.getInstance().getServerProperties().isBungeecord();
-            boolean isBungeeGuard = Limbo.getInstance().getServerProperties().isBungeeGuard();
-            boolean isVelocityModern = Limbo.getInstance().getServerProperties().isVelocityModern();
-            String bungeeForwarding = handshake.getServerAddress();
-            UUID bungeeUUID = null;
-            SkinResponse forwardedSkin = null;
+    protected void handlePacket(PacketIn packetIn) throws Exception {
+        switch (state) {
+            case HANDSHAKE:
+                handleHandshake((PacketHandshakingIn) packetIn);
+                break;
+            case STATUS:
+                handleStatus(packetIn);
+                break;
+            case LOGIN:
+                handleLogin(packetIn);
+                break;
+            case CONFIGURATION:
+                handleConfiguration(packetIn);
+                break;
+            case PLAY:
+                handlePlay(packetIn);
+                break;
+            default:
+                break;
+        }
+    }
 
-            try {
-                switch (handshake.getHandshakeType()) {
-                case STATUS:
-                    state = ClientState.STATUS;
-                    while (clientSocket.isConnected()) {
-                        PacketIn packetIn = channel.readPacket();
-                        if (packetIn instanceof PacketStatusInRequest) {
-                            ServerProperties properties = Limbo.getInstance().getServerProperties();
-
-                            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
-                            if (Limbo.getInstance().getServerProperties().handshakeVerboseEnabled()) {
-                                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Handshake Status has pinged");
+    private void handleHandshake(PacketHandshakingIn handshake) {
+        switch (handshake.getHandshakeType()) {
+            case STATUS:
+                state = ClientState.STATUS;
+                break;
+            case LOGIN:
+                state = ClientState.LOGIN;
+                handshakeTime = System.nanoTime();
+                ServerProperties properties = Limbo.getInstance().getServerProperties();
+                boolean isBungeecord = properties.isBungeecord();
+                boolean isBungeeGuard = properties.isBungeeGuard();
+                String bungeeForwarding = handshake.getServerAddress();
+
+                if (isBungeecord || isBungeeGuard) {
+                    try {
+                        String[] data = bungeeForwarding.split("\\x00");
+                        String host = "";
+                        String floodgate = "";
+                        String clientIp = "";
+                        String bungee = "";
+                        String skinData = "";
+                        int state = 0;
+                        for (int i = 0; i < data.length; i++) {
+                            if (!properties.isReducedDebugInfo()) {
+                                Limbo.getInstance().getConsole().sendMessage(i + ": " + data[i]);
                             }
-                            ServerProperties p = Limbo.getInstance().getServerProperties();
-                            StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayers().size(), p.getFavicon().orElse(null)));
-                            PacketStatusOutResponse response = new PacketStatusOutResponse(Limbo.getInstance().buildServerListResponseJson(event.getVersion(), event.getProtocol(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline(), event.getFavicon()));
-                            sendPacket(response);
-                        } else if (packetIn instanceof PacketStatusInPing) {
-                            PacketStatusInPing ping = (PacketStatusInPing) packetIn;
-                            PacketStatusOutPong pong = new PacketStatusOutPong(ping.getPayload());
-                            sendPacket(pong);
-                            break;
-                        }
-                    }
-                    break;
-                case LOGIN:
-                    state = ClientState.LOGIN;
-                    ServerProperties properties = Limbo.getInstance().getServerProperties();
-
-                    if (isBungeecord || isBungeeGuard) {
-                        try {
-                            String[] data = bungeeForwarding.split("\\x00");
-                            String host = "";
-                            String floodgate = "";
-                            String clientIp = "";
-                            String bungee = "";
-                            String skinData = "";
-                            int state = 0;
-                            for (int i = 0; i < data.length; i++) {
-                                if (!properties.isReducedDebugInfo()) {
-                                    Limbo.getInstance().getConsole().sendMessage(i + ": " + data[i]);
-                                }
 
-                                switch (state) {
-                                default:
-                                    Limbo.getInstance().getConsole().sendMessage(i + ": ignore data: State: " + state);
-                                    break;
-                                case 0:
-                                    host = data[i];
-                                    state = 1;
-                                    break;
-                                case 1:
-                                    if (data[i].startsWith("^Floodgate^")) {
-                                        floodgate = data[i];
-                                        state = 2;
-                                        break;
-                                    }
-                                    /* fallthrough */
-                                case 2:
-                                    clientIp = data[i];
-                                    state = 3;
-                                    break;
-                                case 3:
-                                    bungee = data[i];
-                                    state = 4;
-                                    break;
-                                case 4:
-                                    skinData = data[i];
-                                    state = 6;
+                            switch (state) {
+                            default:
+                                Limbo.getInstance().getConsole().sendMessage(i + ": ignore data: State: " + state);
+                                break;
+                            case 0:
+                                host = data[i];
+                                state = 1;
+                                break;
+                            case 1:
+                                if (data[i].startsWith("^Floodgate^")) {
+                                    floodgate = data[i];
+                                    state = 2;
                                     break;
                                 }
+                                /* fallthrough */
+                            case 2:
+                                clientIp = data[i];
+                                state = 3;
+                                break;
+                            case 3:
+                                bungee = data[i];
+                                state = 4;
+                                break;
+                            case 4:
+                                skinData = data[i];
+                                state = 6;
+                                break;
                             }
-                            if (state != 6) {
-                                throw new IllegalStateException("Illegal bungee state: " + state);
-                            }
+                        }
+                        if (state != 6) {
+                            throw new IllegalStateException("Illegal bungee state: " + state);
+                        }
 
-                            if (!properties.isReducedDebugInfo()) {
-                                Limbo.getInstance().getConsole().sendMessage("Host: " + host);
-                                Limbo.getInstance().getConsole().sendMessage("Floodgate: " + floodgate);
-                                Limbo.getInstance().getConsole().sendMessage("clientIp: " + clientIp);
-                                Limbo.getInstance().getConsole().sendMessage("bungee: " + bungee);
-                                Limbo.getInstance().getConsole().sendMessage("skinData: " + skinData);
-                            }
+                        if (!properties.isReducedDebugInfo()) {
+                            Limbo.getInstance().getConsole().sendMessage("Host: " + host);
+                            Limbo.getInstance().getConsole().sendMessage("Floodgate: " + floodgate);
+                            Limbo.getInstance().getConsole().sendMessage("clientIp: " + clientIp);
+                            Limbo.getInstance().getConsole().sendMessage("bungee: " + bungee);
+                            Limbo.getInstance().getConsole().sendMessage("skinData: " + skinData);
+                        }
 
-                            bungeeUUID = UUID.fromString(bungee.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]+)", "$1-$2-$3-$4-$5"));
-                            inetAddress = InetAddress.getByName(clientIp);
+                        bungeeUUID = UUID.fromString(bungee.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]+)", "$1-$2-$3-$4-$5"));
+                        inetAddress = InetAddress.getByName(clientIp);
 
-                            boolean bungeeGuardFound = false;
+                        boolean bungeeGuardFound = false;
 
-                            if (!skinData.equals("")) {
-                                JSONArray skinJson = (JSONArray) new JSONParser().parse(skinData);
+                        if (!skinData.equals("")) {
+                            JSONArray skinJson = (JSONArray) new JSONParser().parse(skinData);
 
-                                for (Object obj : skinJson) {
-                                    JSONObject property = (JSONObject) obj;
-                                    if (property.get("name").toString().equals("textures")) {
-                                        String skin = property.get("value").toString();
-                                        String signature = property.get("signature").toString();
-                                        forwardedSkin = new SkinResponse(skin, signature);
-                                    } else if (isBungeeGuard && property.get("name").toString().equals("bungeeguard-token")) {
-                                        String token = property.get("value").toString();
-                                        bungeeGuardFound = Limbo.getInstance().getServerProperties().getForwardingSecrets().contains(token);
-                                    }
+                            for (Object obj : skinJson) {
+                                JSONObject property = (JSONObject) obj;
+                                if (property.get("name").toString().equals("textures")) {
+                                    String skin = property.get("value").toString();
+                                    String signature = property.get("signature").toString();
+                                    forwardedSkin = new SkinResponse(skin, signature);
+                                } else if (isBungeeGuard && property.get("name").toString().equals("bungeeguard-token")) {
+                                    String token = property.get("value").toString();
+                                    bungeeGuardFound = properties.getForwardingSecrets().contains(token);
                                 }
                             }
+                        }
 
-                            if (isBungeeGuard && !bungeeGuardFound) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Invalid information forwarding"));
-                                break;
-                            }
-                        } catch (Exception e) {
-                            if (!properties.isReducedDebugInfo()) {
-                                StringWriter sw = new StringWriter();
-                                PrintWriter pw = new PrintWriter(sw);
-                                e.printStackTrace(pw);
-                                Limbo.getInstance().getConsole().sendMessage(sw.toString());
-                            }
-                            Limbo.getInstance().getConsole().sendMessage("If you wish to use bungeecord's IP forwarding, please enable that in your bungeecord config.yml as well!");
-                            disconnectDuringLogin(new BaseComponent[] {new TextComponent(ChatColor.RED + "Please connect from the proxy!")});
+                        if (isBungeeGuard && !bungeeGuardFound) {
+                            disconnectDuringLogin(TextComponent.fromLegacyText("Invalid information forwarding"));
                         }
+                    } catch (Exception e) {
+                        if (!properties.isReducedDebugInfo()) {
+                            StringWriter sw = new StringWriter();
+                            PrintWriter pw = new PrintWriter(sw);
+                            e.printStackTrace(pw);
+                            Limbo.getInstance().getConsole().sendMessage(sw.toString());
+                        }
+                        Limbo.getInstance().getConsole().sendMessage("If you wish to use bungeecord's IP forwarding, please enable that in your bungeecord config.yml as well!");
+                        disconnectDuringLogin(new BaseComponent[] {new TextComponent(ChatColor.RED + "Please connect from the proxy!")});
                     }
-                    int messageId = this.random.nextInt();
-                    while (clientSocket.isConnected()) {
-                        PacketIn packetIn = channel.readPacket();
-
-                        if (packetIn instanceof PacketLoginInLoginStart) {
-                            PacketLoginInLoginStart start = (PacketLoginInLoginStart) packetIn;
-                            String username = start.getUsername();
-
-                            if (Limbo.getInstance().getServerProperties().isVelocityModern()) {
-                                PacketLoginOutPluginMessaging loginPluginRequest = new PacketLoginOutPluginMessaging(messageId, ForwardingUtils.VELOCITY_FORWARDING_CHANNEL);
-                                sendPacket(loginPluginRequest);
-                                continue;
-                            }
+                }
+                loginMessageId = this.random.nextInt();
+                break;
+        }
+    }
 
-                            UUID uuid = isBungeecord || isBungeeGuard ? bungeeUUID : start.getUniqueId();
-                            if (uuid == null) {
-                                uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
-                            }
+    private void handleStatus(PacketIn packetIn) throws IOException {
+        if (packetIn instanceof PacketStatusInRequest) {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
 
-                            if (!properties.enforceWhitelist() && properties.uuidWhitelisted(uuid)) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("You are not whitelisted on the server"));
-                                break;
-                            }
+            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
+            if (Limbo.getInstance().getServerProperties().handshakeVerboseEnabled()) {
+                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Handshake Status has pinged");
+            }
+            ServerProperties p = Limbo.getInstance().getServerProperties();
+            StatusPingEvent statusPingEvent = new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayersView().size(), p.getFavicon().orElse(null));
+            pendingStatus = Limbo.getInstance().getEventsManager().callEventAsync(statusPingEvent).thenAccept(event -> {
+                try {
+                    PacketStatusOutResponse response = new PacketStatusOutResponse(Limbo.getInstance().buildServerListResponseJson(event.getVersion(), event.getProtocol(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline(), event.getFavicon()));
+                    sendPacket(response);
+                } catch (IOException ignored) {
+                }
+            });
+        } else if (packetIn instanceof PacketStatusInPing) {
+            PacketStatusInPing ping = (PacketStatusInPing) packetIn;
+            //a pipelined ping must not overtake the status response
+            pendingStatus.whenComplete((ignore, error) -> {
+                PacketStatusOutPong pong = new PacketStatusOutPong(ping.getPayload());
+                try {
+                    sendPacket(pong);
+                } catch (IOException ignored) {
+                }
+                closeConnection();
+            });
+        }
+    }
 
-                            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(uuid, username);
-                            sendPacket(success);
+    private void enableCompression() throws IOException {
+        int threshold = Limbo.getInstance().getServerProperties().getCompressionThreshold();
+        if (threshold >= 0) {
+            PacketLoginOutSetCompression setCompression = new PacketLoginOutSetCompression(threshold);
+            sendPacket(setCompression);
+            channel.setCompressionThreshold(threshold);
+        }
+    }
 
-                            player = new Player(this, username, uuid, Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
-                            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
-                        } else if (packetIn instanceof PacketLoginInPluginMessaging) {
-                            PacketLoginInPluginMessaging response = (PacketLoginInPluginMessaging) packetIn;
-                            if (response.getMessageId() != messageId) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Internal error, messageId did not match"));
-                                break;
-                            }
-                            if (!response.getData().isPresent()) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Unknown login plugin response packet!"));
-                                break;
-                            }
-                            byte[] responseData = response.getData().get();
-                            if (!ForwardingUtils.validateVelocityModernResponse(responseData)) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Invalid playerinfo forwarding!"));
-                                break;
-                            }
-                            ForwardingUtils.VelocityModernForwardingData data = ForwardingUtils.getVelocityDataFrom(responseData);
-                            inetAddress = InetAddress.getByName(data.getIpAddress());
-                            forwardedSkin = data.getSkinResponse();
-
-                            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(data.getUuid(), data.getUsername());
-                            sendPacket(success);
-
-                            player = new Player(this, data.getUsername(), data.getUuid(), Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
-                            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
-                        } else if (packetIn instanceof ServerboundLoginAcknowledgedPacket) {
-                            state = ClientState.CONFIGURATION;
-                            break;
-                        }
-                    }
+    private void handleLogin(PacketIn packetIn) throws Exception {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        boolean isBungeecord = properties.isBungeecord();
+        boolean isBungeeGuard = properties.isBungeeGuard();
+
+        if (packetIn instanceof PacketLoginInLoginStart) {
+            PacketLoginInLoginStart start = (PacketLoginInLoginStart) packetIn;
+            String username = start.getUsername();
+
+            if (properties.isVelocityModern()) {
+                PacketLoginOutPluginMessaging loginPluginRequest = new PacketLoginOutPluginMessaging(loginMessageId, ForwardingUtils.VELOCITY_FORWARDING_CHANNEL);
+                sendPacket(loginPluginRequest);
+                return;
+            }
+
+            UUID uuid = isBungeecord || isBungeeGuard ? bungeeUUID : start.getUniqueId();
+            if (uuid == null) {
+                uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
+            }
+
+            if (!properties.enforceWhitelist() && properties.uuidWhitelisted(uuid)) {
+                disconnectDuringLogin(TextComponent.fromLegacyText("You are not whitelisted on the server"));
+                return;
+            }
+
+            enableCompression();
+
+            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(uuid, username);
+            sendPacket(success);
+
+            player = new Player(this, username, uuid, Limbo.getInstance().getNextEntityId(), properties.getWorldSpawn(), new PlayerInteractManager());
+            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
+        } else if (packetIn instanceof PacketLoginInPluginMessaging) {
+            PacketLoginInPluginMessaging response = (PacketLoginInPluginMessaging) packetIn;
+            if (response.getMessageId() != loginMessageId) {
+                disconnectDuringLogin(TextComponent.fromLegacyText("Internal error, messageId did not match"));
+                return;
+            }
+            if (!response.getData().isPresent()) {
+                disconnectDuringLogin(TextComponent.fromLegacyText("Unknown login plugin response packet!"));
+                return;
+            }
+            byte[] responseData = response.getData().get();
+            if (!ForwardingUtils.validateVelocityModernResponse(responseData)) {
+                disconnectDuringLogin(TextComponent.fromLegacyText("Invalid playerinfo forwarding!"));
+                return;
+            }
+            ForwardingUtils.VelocityModernForwardingData data = ForwardingUtils.getVelocityDataFrom(responseData);
+            inetAddress = InetAddress.getByName(data.getIpAddress());
+            forwardedSkin = data.getSkinResponse();
+
+            enableCompression();
 
-                    PlayerLoginEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerLoginEvent(this, false, Component.empty()));
+            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(data.getUuid(), data.getUsername());
+            sendPacket(success);
+
+            player = new Player(this, data.getUsername(), data.getUuid(), Limbo.getInstance().getNextEntityId(), properties.getWorldSpawn(), new PlayerInteractManager());
+            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
+        } else if (packetIn instanceof ServerboundLoginAcknowledgedPacket) {
+            state = ClientState.CONFIGURATION;
+
+            //the skin is looked up while the login event and configuration run
+            boolean forwarding = properties.isVelocityModern() || isBungeeGuard || isBungeecord;
+            skinLookup = forwarding && forwardedSkin != null ? CompletableFuture.completedFuture(forwardedSkin) : Limbo.getInstance().getProfileService().getSkin(player.getName());
+
+            //the session moves on to other packets while login handlers and their intents run
+            Limbo.getInstance().getEventsManager().callEventAsync(new PlayerLoginEvent(this, false, Component.empty())).whenComplete((event, error) -> {
+                try {
+                    if (error != null) {
+                        throw error;
+                    }
                     if (event.isCancelled()) {
                         disconnectDuringLogin(event.getCancelReason());
+                        return;
                     }
+                    startConfiguration();
+                } catch (Throwable e) {
+                    closeConnection();
+                }
+            });
+        }
+    }
 
-                    break;
+    private void startConfiguration() throws Exception {
+        PacketTemplate registryData = Limbo.getInstance().getJoinPacketTemplates().getRegistryData();
+        sendPacket(registryData.getPacket(), registryData.getBytes(), false);
+
+        ClientboundFinishConfigurationPacket clientboundFinishConfigurationPacket = new ClientboundFinishConfigurationPacket();
+        sendPacket(clientboundFinishConfigurationPacket);
+    }
+
+    private PacketPlayOutPlayerInfo createPlayerInfo(SkinResponse skinResponse) {
+        return createPlayerInfo(EnumSet.of(PlayerInfoAction.ADD_PLAYER, PlayerInfoAction.UPDATE_GAME_MODE, PlayerInfoAction.UPDATE_LISTED, PlayerInfoAction.UPDATE_LATENCY, PlayerInfoAction.UPDATE_DISPLAY_NAME), skinResponse);
+    }
+
+    private PacketPlayOutPlayerInfo createPlayerInfo(EnumSet<PlayerInfoAction> actions, SkinResponse skinResponse) {
+        PlayerSkinProperty skin = skinResponse != null ? new PlayerSkinProperty(skinResponse.getSkin(), skinResponse.getSignature()) : null;
+        return new PacketPlayOutPlayerInfo(actions, player.getUniqueId(), new PlayerInfoData.PlayerInfoDataAddPlayer(player.getName(), true, Optional.ofNullable(skin), player.getGamemode(), ping, false, Optional.empty()));
+    }
+
+    private void handleConfiguration(PacketIn packetIn) throws Exception {
+        if (!(packetIn instanceof ServerboundFinishConfigurationPacket)) {
+            return;
+        }
+
+        state = ClientState.PLAY;
+        Limbo.getInstance().getUnsafe().a(player);
+
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        Location worldSpawn = properties.getWorldSpawn();
+
+        PlayerSpawnEvent spawnEvent = Limbo.getInstance().getEventsManager().callEvent(new PlayerSpawnEvent(player, worldSpawn));
+        worldSpawn = spawnEvent.getSpawnLocation();
+        World world = worldSpawn.getWorld();
+
+        JoinPacketTemplates templates = Limbo.getInstance().getJoinPacketTemplates();
+        LoginTemplate loginTemplate = templates.getLogin(world);
+        PacketPlayOutLogin join = loginTemplate.createPacket(player.getEntityId(), properties.getDefaultGamemode());
+        sendPacket(join, loginTemplate.getBytes(player.getEntityId(), properties.getDefaultGamemode()), false);
+        Limbo.getInstance().getUnsafe().a(player, properties.getDefaultGamemode());
+
+        PacketTemplate brand = templates.getBrand();
+        sendPacket(brand.getPacket(), brand.getBytes(), false);
+
+        //the client model keeps the skin of the first entry of its own player, so the rest of the join waits for a pending
+        //lookup for a moment, it is continued from the lookup or the timeout instead of parking the session thread
+        ServerConnection server = Limbo.getInstance().getServerConnection();
+        CompletableFuture<SkinResponse> skin = new CompletableFuture<>();
+        skinLookup.whenComplete((response, error) -> skin.complete(error == null ? response : null));
+        if (skin.isDone()) {
+            finishJoin(properties, templates, world, worldSpawn, skin.getNow(null));
+        } else {
+            ScheduledFuture<?> timeout = server.getTimer().schedule(() -> skin.complete(null), SKIN_LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS);
+            Location spawn = worldSpawn;
+            skin.thenAcceptAsync(response -> {
+                timeout.cancel(false);
+                try {
+                    finishJoin(properties, templates, world, spawn, response);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    closeConnection();
                 }
-            } catch (Exception e) {
-                channel.close();
-                clientSocket.close();
-                state = ClientState.DISCONNECTED;
-            }
+            }, server.getChunkExecutor());
+        }
+    }
 
-            if (state == ClientState.CONFIGURATION) {
+    private void finishJoin(ServerProperties properties, JoinPacketTemplates templates, World world, Location worldSpawn, SkinResponse skinresponce) throws Exception {
+        sendPacket(createPlayerInfo(skinresponce), false);
 
-                TimeUnit.MILLISECONDS.sleep(500);
+        Set<PlayerAbilityFlags> flags = new HashSet<>();
+        if (properties.isAllowFlight()) {
+            flags.add(PlayerAbilityFlags.FLY);
+        }
+        if (player.getGamemode().equals(GameMode.CREATIVE)) {
+            flags.add(PlayerAbilityFlags.CREATIVE);
+        }
+        PacketPlayOutPlayerAbilities abilities = new PacketPlayOutPlayerAbilities(0.05F, 0.1F, flags.toArray(new PlayerAbilityFlags[flags.size()]));
+        sendPacket(abilities, false);
 
-                ClientboundRegistryDataPacket registryDataPacket = new ClientboundRegistryDataPacket(Limbo.getInstance().getDimensionRegistry().getCodec());
-                sendPacket(registryDataPacket);
+        String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName() + "(" + player.getUniqueId() + ")";
+        Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had connected to the Limbo server!");
 
-                ClientboundFinishConfigurationPacket clientboundFinishConfigurationPacket = new ClientboundFinishConfigurationPacket();
-                sendPacket(clientboundFinishConfigurationPacket);
+        player.playerInteractManager.update();
 
-                ServerboundFinishConfigurationPacket serverboundFinishConfigurationPacket = (ServerboundFinishConfigurationPacket) channel.readPacket();
+        PacketPlayOutDeclareCommands declare = DeclareCommands.getDeclareCommandsPacket(player);
+        if (declare != null) {
+            sendPacket(declare, false);
+        }
 
-                state = ClientState.PLAY;
-                Limbo.getInstance().getUnsafe().a(player);
+        PacketPlayOutSpawnPosition spawnPos = new PacketPlayOutSpawnPosition(BlockPosition.from(worldSpawn), worldSpawn.getPitch());
+        sendPacket(spawnPos, false);
 
-                TimeUnit.MILLISECONDS.sleep(500);
+        PacketPlayOutPositionAndLook positionLook = new PacketPlayOutPositionAndLook(worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch(), 1);
+        Limbo.getInstance().getUnsafe().a(player, new Location(world, worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch()));
+        sendPacket(positionLook, false);
 
-                ServerProperties properties = Limbo.getInstance().getServerProperties();
-                Location worldSpawn = properties.getWorldSpawn();
-
-                PlayerSpawnEvent spawnEvent = Limbo.getInstance().getEventsManager().callEvent(new PlayerSpawnEvent(player, worldSpawn));
-                worldSpawn = spawnEvent.getSpawnLocation();
-                World world = worldSpawn.getWorld();
-
-                PacketPlayOutLogin join = new PacketPlayOutLogin(player.getEntityId(), false, Limbo.getInstance().getWorlds(), (byte) properties.getMaxPlayers(), 8, 8, properties.isReducedDebugInfo(), true, false, world.getEnvironment(), world, 0, properties.getDefaultGamemode(), false, true, 0);
-                sendPacket(join);
-                Limbo.getInstance().getUnsafe().a(player, properties.getDefaultGamemode());
-
-                ByteArrayOutputStream brandOut = new ByteArrayOutputStream();
-                DataTypeIO.writeString(new DataOutputStream(brandOut), properties.getServerModName(), StandardCharsets.UTF_8);
-                sendPluginMessage(BRAND_ANNOUNCE_CHANNEL, brandOut.toByteArray());
-                
-                SkinResponse skinresponce = (isVelocityModern || isBungeeGuard || isBungeecord) && forwardedSkin != null ? forwardedSkin : MojangAPIUtils.getSkinFromMojangServer(player.getName());
-                PlayerSkinProperty skin = skinresponce != null ? new PlayerSkinProperty(skinresponce.getSkin(), skinresponce.getSignature()) : null;
-                PacketPlayOutPlayerInfo info = new PacketPlayOutPlayerInfo(EnumSet.of(PlayerInfoAction.ADD_PLAYER, PlayerInfoAction.UPDATE_GAME_MODE, PlayerInfoAction.UPDATE_LISTED, PlayerInfoAction.UPDATE_LATENCY, PlayerInfoAction.UPDATE_DISPLAY_NAME), player.getUniqueId(), new PlayerInfoData.PlayerInfoDataAddPlayer(player.getName(), true, Optional.ofNullable(skin), properties.getDefaultGamemode(), 0, false, Optional.empty()));
-                sendPacket(info);
-                
-                Set<PlayerAbilityFlags> flags = new HashSet<>();
-                if (properties.isAllowFlight()) {
-                    flags.add(PlayerAbilityFlags.FLY);
-                }
-                if (player.getGamemode().equals(GameMode.CREATIVE)) {
-                    flags.add(PlayerAbilityFlags.CREATIVE);
-                }
-                PacketPlayOutPlayerAbilities abilities = new PacketPlayOutPlayerAbilities(0.05F, 0.1F, flags.toArray(new PlayerAbilityFlags[flags.size()]));
-                sendPacket(abilities);
-                
-                String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName() + "(" + player.getUniqueId() + ")";
-                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had connected to the Limbo server!");
+        player.getDataWatcher().update();
+        PacketPlayOutEntityMetadata show = new PacketPlayOutEntityMetadata(player, false, Player.class.getDeclaredField("skinLayers"));
+        sendPacket(show, false);
 
-                player.playerInteractManager.update();
+        Limbo.getInstance().getEventsManager().callEvent(new PlayerJoinEvent(player));
 
-                PacketPlayOutDeclareCommands declare = DeclareCommands.getDeclareCommandsPacket(player);
-                if (declare != null) {
-                    sendPacket(declare);
-                }
-                
-                PacketPlayOutSpawnPosition spawnPos = new PacketPlayOutSpawnPosition(BlockPosition.from(worldSpawn), worldSpawn.getPitch());
-                sendPacket(spawnPos);
-                
-                PacketPlayOutPositionAndLook positionLook = new PacketPlayOutPositionAndLook(worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch(), 1);
-                Limbo.getInstance().getUnsafe().a(player, new Location(world, worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch()));
-                sendPacket(positionLook);
-                
-                player.getDataWatcher().update();
-                PacketPlayOutEntityMetadata show = new PacketPlayOutEntityMetadata(player, false, Player.class.getDeclaredField("skinLayers"));
-                sendPacket(show);
-                
-                Limbo.getInstance().getEventsManager().callEvent(new PlayerJoinEvent(player));
-                
-                if (properties.isAllowFlight()) {
-                    PacketPlayOutGameState state = new PacketPlayOutGameState(3, player.getGamemode().getId());
-                    sendPacket(state);
-                }
-                
-                // RESOURCEPACK CODE CONRIBUTED BY GAMERDUCK123
-                if (!properties.getResourcePackLink().equalsIgnoreCase("")) {
-                    if (!properties.getResourcePackSHA1().equalsIgnoreCase("")) {
-                        //SEND RESOURCEPACK
-                        player.setResourcePack(properties.getResourcePackLink(), properties.getResourcePackSHA1(), properties.getResourcePackRequired(), properties.getResourcePackPrompt());
-                    } else {
-                        //NO SHA
-                        Limbo.getInstance().getConsole().sendMessage("ResourcePacks require SHA1s");
+        if (properties.isAllowFlight()) {
+            PacketPlayOutGameState state = new PacketPlayOutGameState(3, player.getGamemode().getId());
+            sendPacket(state, false);
+        }
+        requestFlush();
+        Limbo.getInstance().getServerConnection().getJoinLatency().record(System.nanoTime() - handshakeTime);
+
+        if (skinresponce == null && !skinLookup.isDone()) {
+            skinLookup.thenAccept(skin -> {
+                if (skin != null && state == ClientState.PLAY && Packet.getPlayOut().containsKey(ClientboundPlayerInfoRemovePacket.class)) {
+                    try {
+                        //the client only reads the skin of a new entry, so the entry is replaced, this fixes the tab list but not the player model
+                        sendPacket(new ClientboundPlayerInfoRemovePacket(Collections.singletonList(player.getUniqueId())), false);
+                        sendPacket(createPlayerInfo(skin), false);
+                        requestFlush();
+                    } catch (IOException e) {
+                        closeConnection();
                     }
-                } else {
-                    //RESOURCEPACK NOT ENABLED
                 }
-                
-                // PLAYER LIST HEADER AND FOOTER CODE CONRIBUTED BY GAMERDUCK123
-                player.sendPlayerListHeaderAndFooter(properties.getTabHeader(), properties.getTabFooter());
-                
-                ready = true;
-                
-                keepAliveTask = new TimerTask() {
-                    @Override
-                    public void run() {
-                        if (state.equals(ClientState.DISCONNECTED)) {
-                            this.cancel();
-                        } else if (ready && state.equals(ClientState.PLAY)) {
-                            long now = System.currentTimeMillis();
-                            if (now - getLastPacketTimestamp() > 15000) {
-                                PacketPlayOutKeepAlive keepAlivePacket = new PacketPlayOutKeepAlive(now);
-                                try {
-                                    sendPacket(keepAlivePacket);
-                                    setLastKeepAlivePayLoad(now);
-                                } catch (Exception e) {
-                                }
-                            }
-                        }
-                    }
-                };
-                new Timer().schedule(keepAliveTask, 5000, 10000);
-                
-                while (clientSocket.isConnected()) {
-                    try {
-                        CheckedBiConsumer<PlayerMoveEvent, Location, IOException> processMoveEvent = (event, originalTo) -> {
-                            if (event.isCancelled()) {
-                                Location returnTo = event.getFrom();
-                                PacketPlayOutPositionAndLook cancel = new PacketPlayOutPositionAndLook(returnTo.getX(), returnTo.getY(), returnTo.getZ(), returnTo.getYaw(), returnTo.getPitch(), 1);
-                                sendPacket(cancel);
-                            } else {
-                                Location to = event.getTo();
-                                Limbo.getInstance().getUnsafe().a(player, to);
-                                // If an event handler used setTo, let's make sure we tell the player about it.
-                                if (!originalTo.equals(to)) {
-                                    PacketPlayOutPositionAndLook pos = new PacketPlayOutPositionAndLook(to.getX(), to.getY(), to.getZ(), to.getYaw(), to.getPitch(), 1);
-                                    sendPacket(pos);
-                                }
-                                PacketPlayOutUpdateViewPosition response = new PacketPlayOutUpdateViewPosition((int) player.getLocation().getX() >> 4, (int) player.getLocation().getZ() >> 4);
-                                sendPacket(response);
-                            }
-                        };
+            });
+        }
 
-                        PacketIn packetIn = channel.readPacket();
+        // RESOURCEPACK CODE CONRIBUTED BY GAMERDUCK123
+        if (!properties.getResourcePackLink().equalsIgnoreCase("")) {
+            if (!properties.getResourcePackSHA1().equalsIgnoreCase("")) {
+                //SEND RESOURCEPACK
+                player.setResourcePack(properties.getResourcePackLink(), properties.getResourcePackSHA1(), properties.getResourcePackRequired(), properties.getResourcePackPrompt());
+            } else {
+                //NO SHA
+                Limbo.getInstance().getConsole().sendMessage("ResourcePacks require SHA1s");
+            }
+        } else {
+            //RESOURCEPACK NOT ENABLED
+        }
 
-                        if (packetIn instanceof PacketPlayInPositionAndLook) {
-                            PacketPlayInPositionAndLook pos = (PacketPlayInPositionAndLook) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), pos.getYaw(), pos.getPitch());
+        // PLAYER LIST HEADER AND FOOTER CODE CONRIBUTED BY GAMERDUCK123
+        PacketTemplate headerFooter = templates.getPlayerListHeaderFooter();
+        sendPacket(headerFooter.getPacket(), headerFooter.getBytes(), false);
+        requestFlush();
 
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInPosition) {
-                            PacketPlayInPosition pos = (PacketPlayInPosition) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), player.getLocation().getYaw(), player.getLocation().getPitch());
-
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInRotation) {
-                            PacketPlayInRotation pos = (PacketPlayInRotation) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), player.getLocation().getX(), player.getLocation().getY(), player.getLocation().getZ(), pos.getYaw(), pos.getPitch());
-
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInKeepAlive) {
-                            long lastPayload = getLastKeepAlivePayLoad();
-                            PacketPlayInKeepAlive alive = (PacketPlayInKeepAlive) packetIn;
-                            if (lastPayload == -1) {
-                                Limbo.getInstance().getConsole().sendMessage("Unsolicited KeepAlive packet for player " + player.getName());
-                            } else if (alive.getPayload() != lastPayload) {
-                                Limbo.getInstance().getConsole().sendMessage("Incorrect Payload received in KeepAlive packet for player " + player.getName());
-                                break;
-                            }
-                        } else if (packetIn instanceof PacketPlayInTabComplete) {
-                            PacketPlayInTabComplete request = (PacketPlayInTabComplete) packetIn;
-                            String[] command = CustomStringUtils.splitStringToArgs(request.getText().substring(1));
-
-                            List<TabCompleteMatches> matches = new ArrayList<>(Limbo.getInstance().getPluginManager().getTabOptions(player, command).stream().map(each -> new TabCompleteMatches(each)).collect(Collectors.toList()));
-
-                            int start = CustomStringUtils.getIndexOfArg(request.getText(), command.length - 1) + 1;
-                            int length = command[command.length - 1].length();
-
-                            PacketPlayOutTabComplete response = new PacketPlayOutTabComplete(request.getId(), start, length, matches.toArray(new TabCompleteMatches[matches.size()]));
-                            sendPacket(response);
-                        } else if (packetIn instanceof PacketPlayInChat) {
-                            PacketPlayInChat chat = (PacketPlayInChat) packetIn;
-                            player.chat(chat.getMessage(), true, chat.getSignature(), chat.getTime());
-                        } else if (packetIn instanceof ServerboundChatCommandPacket) {
-                            ServerboundChatCommandPacket command = (ServerboundChatCommandPacket) packetIn;
-                            Limbo.getInstance().dispatchCommand(player, "/" + command.getCommand());
-                        } else if (packetIn instanceof PacketPlayInHeldItemChange) {
-                            PacketPlayInHeldItemChange change = (PacketPlayInHeldItemChange) packetIn;
-                            PlayerSelectedSlotChangeEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSelectedSlotChangeEvent(player, (byte) change.getSlot()));
-                            if (event.isCancelled()) {
-                                PacketPlayOutHeldItemChange cancelPacket = new PacketPlayOutHeldItemChange(player.getSelectedSlot());
-                                sendPacket(cancelPacket);
-                            } else if (change.getSlot() != event.getSlot()) {
-                                PacketPlayOutHeldItemChange changePacket = new PacketPlayOutHeldItemChange(event.getSlot());
-                                sendPacket(changePacket);
-                                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
-                            } else {
-                                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
-                            }
+        ready = true;
+    }
 
-                        } else if (packetIn instanceof PacketPlayInResourcePackStatus) {
-                            PacketPlayInResourcePackStatus rpcheck = (PacketPlayInResourcePackStatus) packetIn;
-                            // Pass on result to the events
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerResourcePackStatusEvent(player, rpcheck.getLoadedValue()));
-                            if (rpcheck.getLoadedValue().equals(EnumResourcePackStatus.DECLINED) && properties.getResourcePackRequired()) {
-                                player.disconnect(new TranslatableComponent("multiplayer.requiredTexturePrompt.disconnect"));
-                            }
-                        } else if (packetIn instanceof PacketPlayInPluginMessaging) {
-                            PacketPlayInPluginMessaging inPluginMessaging = (PacketPlayInPluginMessaging) packetIn;
-                            Limbo.getInstance().getEventsManager().callEvent(new PluginMessageEvent(player, inPluginMessaging.getChannel(), inPluginMessaging.getData()));
-                        } else if (packetIn instanceof PacketPlayInBlockPlace) {
-                            PacketPlayInBlockPlace packet = (PacketPlayInBlockPlace) packetIn;
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), null, null, packet.getHand()));
-                        } else if (packetIn instanceof PacketPlayInUseItem) {
-                            PacketPlayInUseItem packet = (PacketPlayInUseItem) packetIn;
-                            BlockState block = player.getWorld().getBlock(packet.getBlockHit().getBlockPos());
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), block, packet.getBlockHit().getDirection(), packet.getHand()));
-                        } else if (packetIn instanceof PacketPlayInSetCreativeSlot) {
-                            PacketPlayInSetCreativeSlot packet = (PacketPlayInSetCreativeSlot) packetIn;
-                            InventoryCreativeEvent event = Limbo.getInstance().getEventsManager().callEvent(new InventoryCreativeEvent(player.getInventoryView(), player.getInventory().getUnsafe().b().applyAsInt(packet.getSlotNumber()), packet.getItemStack()));
-                            if (event.isCancelled()) {
-                                player.updateInventory();
-                            } else {
-                                player.getInventory().setItem(event.getSlot(), event.getNewItem());
-                            }
-                        } else if (packetIn instanceof PacketPlayInWindowClick) {
-                            PacketPlayInWindowClick packet = (PacketPlayInWindowClick) packetIn;
-                            try {
-                                InventoryClickUtils.handle(player, packet);
-                            } catch (Throwable e) {
-                                e.printStackTrace();
-                            }
-                        } else if (packetIn instanceof PacketPlayInCloseWindow) {
-                            PacketPlayInCloseWindow packet = (PacketPlayInCloseWindow) packetIn;
-                            Inventory inventory = player.getInventoryView().getTopInventory();
-                            if (inventory != null) {
-                                Integer id = inventory.getUnsafe().c().get(player);
-                                if (id != null) {
-                                    Limbo.getInstance().getEventsManager().callEvent(new InventoryCloseEvent(player.getInventoryView()));
-                                    player.getInventoryView().getUnsafe().a(null, null);
-                                    inventory.getUnsafe().c().remove(player);
-                                }
-                            }
-                        } else if (packetIn instanceof PacketPlayInBlockDig) {
-                            PacketPlayInBlockDig packet = (PacketPlayInBlockDig) packetIn;
-                            //noinspection SwitchStatementWithTooFewBranches
-                            switch (packet.getAction()) {
-                                case SWAP_ITEM_WITH_OFFHAND: {
-                                    EntityEquipment equipment = player.getEquipment();
-                                    PlayerSwapHandItemsEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSwapHandItemsEvent(player, equipment.getItemInOffHand(), equipment.getItemInMainHand()));
-                                    if (!event.isCancelled()) {
-                                        equipment.setItemInMainHand(event.getMainHandItem());
-                                        equipment.setItemInOffHand(event.getOffHandItem());
-                                    }
-                                    break;
-                                }
-                            }
-                        } else if (packetIn instanceof PacketPlayInPickItem) {
-                            PacketPlayInPickItem packet = (PacketPlayInPickItem) packetIn;
-                            PlayerInventory inventory = player.getInventory();
-                            int slot = inventory.getUnsafe().b().applyAsInt(packet.getSlot());
-                            int i = player.getSelectedSlot();
-                            byte selectedSlot = -1;
-                            boolean firstRun = true;
-                            while (selectedSlot < 0 || (!firstRun && i == player.getSelectedSlot())) {
-                                ItemStack itemStack = inventory.getItem(i);
-                                if (itemStack == null) {
-                                    selectedSlot = (byte) i;
-                                    break;
-                                }
-                                if (++i >= 9) {
-                                    i = 0;
-                                }
-                            }
-                            if (selectedSlot < 0) {
-                                selectedSlot = player.getSelectedSlot();
-                            }
-                            ItemStack leavingHotbar = inventory.getItem(selectedSlot);
-                            inventory.setItem(selectedSlot, inventory.getItem(slot));
-                            inventory.setItem(slot, leavingHotbar);
-                            player.setSelectedSlot(selectedSlot);
-                        } else if (packetIn instanceof PacketPlayInItemName) {
-                            PacketPlayInItemName packet = (PacketPlayInItemName) packetIn;
-                            if (player.getInventoryView().getTopInventory() instanceof AnvilInventory) {
-                                AnvilRenameInputEvent event = Limbo.getInstance().getEventsManager().callEvent(new AnvilRenameInputEvent(player.getInventoryView(), packet.getName()));
-                                if (!event.isCancelled()) {
-                                    AnvilInventory anvilInventory = (AnvilInventory) player.getInventoryView().getTopInventory();
-                                    ItemStack result = anvilInventory.getItem(2);
-                                    if (result != null) {
-                                        result.displayName(LegacyComponentSerializer.legacySection().deserialize(event.getInput()));
-                                    }
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        break;
+    /**
+     * Called by the keep-alive sweep of the {@link ServerConnection}, sends a keep-alive when one is due.
+     * Returns true if the client has not answered the last one in time and should be disconnected.
+     */
+    protected boolean keepAlive(long now) {
+        if (!ready || state != ClientState.PLAY) {
+            return false;
+        }
+        long pending = lastKeepAlivePayLoad.get();
+        if (pending != -1) {
+            return now - pending > KEEP_ALIVE_TIMEOUT && keepAliveTimedOut.compareAndSet(false, true);
+        }
+        if (now - lastKeepAliveTime < KEEP_ALIVE_INTERVAL) {
+            return false;
+        }
+        //a connection busy sending is skipped until the next sweep rather than blocking it
+        if (sendLock.tryLock()) {
+            try {
+                if (channel.writePacket(new PacketPlayOutKeepAlive(now), false)) {
+                    lastKeepAliveTime = now;
+                    setLastKeepAlivePayLoad(now);
+                }
+            } catch (IOException ignore) {
+            } finally {
+                sendLock.unlock();
+            }
+        }
+        return false;
+    }
+
+    private void processMove(Location from, Location to) throws IOException {
+        //position packets arrive many times a second, so the event is only built when someone listens to it
+        if (!Limbo.getInstance().getEventsManager().hasListeners(PlayerMoveEvent.class)) {
+            Limbo.getInstance().getUnsafe().a(player, to);
+            PacketPlayOutUpdateViewPosition response = new PacketPlayOutUpdateViewPosition((int) to.getX() >> 4, (int) to.getZ() >> 4);
+            sendPacket(response);
+            return;
+        }
+        PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
+        processMoveEvent(event, to);
+    }
+
+    private void processMoveEvent(PlayerMoveEvent event, Location originalTo) throws IOException {
+        if (event.isCancelled()) {
+            Location returnTo = event.getFrom();
+            PacketPlayOutPositionAndLook cancel = new PacketPlayOutPositionAndLook(returnTo.getX(), returnTo.getY(), returnTo.getZ(), returnTo.getYaw(), returnTo.getPitch(), 1);
+            sendPacket(cancel);
+        } else {
+            Location to = event.getTo();
+            Limbo.getInstance().getUnsafe().a(player, to);
+            // If an event handler used setTo, let's make sure we tell the player about it.
+            if (!originalTo.equals(to)) {
+                PacketPlayOutPositionAndLook pos = new PacketPlayOutPositionAndLook(to.getX(), to.getY(), to.getZ(), to.getYaw(), to.getPitch(), 1);
+                sendPacket(pos);
+            }
+            PacketPlayOutUpdateViewPosition response = new PacketPlayOutUpdateViewPosition((int) player.getLocation().getX() >> 4, (int) player.getLocation().getZ() >> 4);
+            sendPacket(response);
+        }
+    }
+
+    private void handlePlay(PacketIn packetIn) throws Exception {
+        if (packetIn instanceof PacketPlayInPositionAndLook) {
+            PacketPlayInPositionAndLook pos = (PacketPlayInPositionAndLook) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), pos.getYaw(), pos.getPitch());
+
+            if (!from.equals(to)) {
+                processMove(from, to);
+            }
+        } else if (packetIn instanceof PacketPlayInPosition) {
+            PacketPlayInPosition pos = (PacketPlayInPosition) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), player.getLocation().getYaw(), player.getLocation().getPitch());
+
+            if (!from.equals(to)) {
+                processMove(from, to);
+            }
+        } else if (packetIn instanceof PacketPlayInRotation) {
+            PacketPlayInRotation pos = (PacketPlayInRotation) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), player.getLocation().getX(), player.getLocation().getY(), player.getLocation().getZ(), pos.getYaw(), pos.getPitch());
+
+            if (!from.equals(to)) {
+                processMove(from, to);
+            }
+        } else if (packetIn instanceof PacketPlayInKeepAlive) {
+            long lastPayload = getLastKeepAlivePayLoad();
+            PacketPlayInKeepAlive alive = (PacketPlayInKeepAlive) packetIn;
+            if (lastPayload == -1) {
+                Limbo.getInstance().getConsole().sendMessage("Unsolicited KeepAlive packet for player " + player.getName());
+            } else if (alive.getPayload() != lastPayload) {
+                Limbo.getInstance().getConsole().sendMessage("Incorrect Payload received in KeepAlive packet for player " + player.getName());
+                closeConnection();
+            } else if (lastKeepAlivePayLoad.compareAndSet(lastPayload, -1)) {
+                int latency = (int) (System.currentTimeMillis() - lastPayload);
+                ping = (ping * 3 + latency) / 4;
+                sendPacket(createPlayerInfo(EnumSet.of(PlayerInfoAction.UPDATE_LATENCY), null), false);
+            }
+        } else if (packetIn instanceof ServerboundChunkBatchReceivedPacket) {
+            ServerboundChunkBatchReceivedPacket received = (ServerboundChunkBatchReceivedPacket) packetIn;
+            player.playerInteractManager.onChunkBatchReceived(received.getDesiredChunksPerTick());
+        } else if (packetIn instanceof PacketPlayInTabComplete) {
+            PacketPlayInTabComplete request = (PacketPlayInTabComplete) packetIn;
+            String[] command = CustomStringUtils.splitStringToArgs(request.getText().substring(1));
+
+            List<TabCompleteMatches> matches = new ArrayList<>(Limbo.getInstance().getPluginManager().getTabOptions(player, command).stream().map(each -> new TabCompleteMatches(each)).collect(Collectors.toList()));
+
+            int start = CustomStringUtils.getIndexOfArg(request.getText(), command.length - 1) + 1;
+            int length = command[command.length - 1].length();
+
+            PacketPlayOutTabComplete response = new PacketPlayOutTabComplete(request.getId(), start, length, matches.toArray(new TabCompleteMatches[matches.size()]));
+            sendPacket(response);
+        } else if (packetIn instanceof PacketPlayInChat) {
+            PacketPlayInChat chat = (PacketPlayInChat) packetIn;
+            player.chat(chat.getMessage(), true, chat.getSignature(), chat.getTime());
+        } else if (packetIn instanceof ServerboundChatCommandPacket) {
+            ServerboundChatCommandPacket command = (ServerboundChatCommandPacket) packetIn;
+            Limbo.getInstance().dispatchCommand(player, "/" + command.getCommand());
+        } else if (packetIn instanceof PacketPlayInHeldItemChange) {
+            PacketPlayInHeldItemChange change = (PacketPlayInHeldItemChange) packetIn;
+            PlayerSelectedSlotChangeEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSelectedSlotChangeEvent(player, (byte) change.getSlot()));
+            if (event.isCancelled()) {
+                PacketPlayOutHeldItemChange cancelPacket = new PacketPlayOutHeldItemChange(player.getSelectedSlot());
+                sendPacket(cancelPacket);
+            } else if (change.getSlot() != event.getSlot()) {
+                PacketPlayOutHeldItemChange changePacket = new PacketPlayOutHeldItemChange(event.getSlot());
+                sendPacket(changePacket);
+                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
+            } else {
+                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
+            }
+
+        } else if (packetIn instanceof PacketPlayInResourcePackStatus) {
+            PacketPlayInResourcePackStatus rpcheck = (PacketPlayInResourcePackStatus) packetIn;
+            // Pass on result to the events
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerResourcePackStatusEvent(player, rpcheck.getLoadedValue()));
+            if (rpcheck.getLoadedValue().equals(EnumResourcePackStatus.DECLINED) && Limbo.getInstance().getServerProperties().getResourcePackRequired()) {
+                player.disconnect(new TranslatableComponent("multiplayer.requiredTexturePrompt.disconnect"));
+            }
+        } else if (packetIn instanceof PacketPlayInPluginMessaging) {
+            PacketPlayInPluginMessaging inPluginMessaging = (PacketPlayInPluginMessaging) packetIn;
+            Limbo.getInstance().getEventsManager().callEvent(new PluginMessageEvent(player, inPluginMessaging.getChannel(), inPluginMessaging.getData()));
+        } else if (packetIn instanceof PacketPlayInBlockPlace) {
+            PacketPlayInBlockPlace packet = (PacketPlayInBlockPlace) packetIn;
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), null, null, packet.getHand()));
+        } else if (packetIn instanceof PacketPlayInUseItem) {
+            PacketPlayInUseItem packet = (PacketPlayInUseItem) packetIn;
+            BlockState block = player.getWorld().getBlock(packet.getBlockHit().getBlockPos());
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), block, packet.getBlockHit().getDirection(), packet.getHand()));
+        } else if (packetIn instanceof PacketPlayInSetCreativeSlot) {
+            PacketPlayInSetCreativeSlot packet = (PacketPlayInSetCreativeSlot) packetIn;
+            InventoryCreativeEvent event = Limbo.getInstance().getEventsManager().callEvent(new InventoryCreativeEvent(player.getInventoryView(), player.getInventory().getUnsafe().b().applyAsInt(packet.getSlotNumber()), packet.getItemStack()));
+            if (event.isCancelled()) {
+                player.updateInventory();
+            } else {
+                player.getInventory().setItem(event.getSlot(), event.getNewItem());
+            }
+        } else if (packetIn instanceof PacketPlayInWindowClick) {
+            PacketPlayInWindowClick packet = (PacketPlayInWindowClick) packetIn;
+            try {
+                InventoryClickUtils.handle(player, packet);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        } else if (packetIn instanceof PacketPlayInCloseWindow) {
+            PacketPlayInCloseWindow packet = (PacketPlayInCloseWindow) packetIn;
+            Inventory inventory = player.getInventoryView().getTopInventory();
+            if (inventory != null) {
+                Integer id = inventory.getUnsafe().c().get(player);
+                if (id != null) {
+                    Limbo.getInstance().getEventsManager().callEvent(new InventoryCloseEvent(player.getInventoryView()));
+                    player.getInventoryView().getUnsafe().a(null, null);
+                    inventory.getUnsafe().c().remove(player);
+                }
+            }
+        } else if (packetIn instanceof PacketPlayInBlockDig) {
+            PacketPlayInBlockDig packet = (PacketPlayInBlockDig) packetIn;
+            //noinspection SwitchStatementWithTooFewBranches
+            switch (packet.getAction()) {
+                case SWAP_ITEM_WITH_OFFHAND: {
+                    EntityEquipment equipment = player.getEquipment();
+                    PlayerSwapHandItemsEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSwapHandItemsEvent(player, equipment.getItemInOffHand(), equipment.getItemInMainHand()));
+                    if (!event.isCancelled()) {
+                        equipment.setItemInMainHand(event.getMainHandItem());
+                        equipment.setItemInOffHand(event.getOffHandItem());
                     }
+                    break;
                 }
+            }
+        } else if (packetIn instanceof PacketPlayInPickItem) {
+            PacketPlayInPickItem packet = (PacketPlayInPickItem) packetIn;
+            PlayerInventory inventory = player.getInventory();
+            int slot = inventory.getUnsafe().b().applyAsInt(packet.getSlot());
+            int i = player.getSelectedSlot();
+            byte selectedSlot = -1;
+            boolean firstRun = true;
+            while (selectedSlot < 0 || (!firstRun && i == player.getSelectedSlot())) {
+                ItemStack itemStack = inventory.getItem(i);
+                if (itemStack == null) {
+                    selectedSlot = (byte) i;
+                    break;
+                }
+                if (++i >= 9) {
+                    i = 0;
+                }
+            }
+            if (selectedSlot < 0) {
+                selectedSlot = player.getSelectedSlot();
+            }
+            ItemStack leavingHotbar = inventory.getItem(selectedSlot);
+            inventory.setItem(selectedSlot, inventory.getItem(slot));
+            inventory.setItem(slot, leavingHotbar);
+            player.setSelectedSlot(selectedSlot);
+        } else if (packetIn instanceof PacketPlayInItemName) {
+            PacketPlayInItemName packet = (PacketPlayInItemName) packetIn;
+            if (player.getInventoryView().getTopInventory() instanceof AnvilInventory) {
+                AnvilRenameInputEvent event = Limbo.getInstance().getEventsManager().callEvent(new AnvilRenameInputEvent(player.getInventoryView(), packet.getName()));
+                if (!event.isCancelled()) {
+                    AnvilInventory anvilInventory = (AnvilInventory) player.getInventoryView().getTopInventory();
+                    ItemStack result = anvilInventory.getItem(2);
+                    if (result != null) {
+                        result.displayName(LegacyComponentSerializer.legacySection().deserialize(event.getInput()));
+                    }
+                }
+            }
+        }
+    }
 
+    protected void terminate() {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        if (ready && player != null) {
+            try {
                 Limbo.getInstance().getEventsManager().callEvent(new PlayerQuitEvent(player));
 
-                str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName();
+                ServerProperties properties = Limbo.getInstance().getServerProperties();
+                String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName();
                 Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had disconnected!");
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        } catch (Exception ignored) {
         }
-
         try {
             channel.close();
             clientSocket.close();
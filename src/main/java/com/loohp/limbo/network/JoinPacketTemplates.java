@@ -0,0 +1,202 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.Limbo;
+import com.loohp.limbo.file.ServerProperties;
+import com.loohp.limbo.network.protocol.packets.ClientboundRegistryDataPacket;
+import com.loohp.limbo.network.protocol.packets.PacketOut;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutLogin;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutPlayerListHeaderFooter;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutPluginMessaging;
+import com.loohp.limbo.utils.DataTypeIO;
+import com.loohp.limbo.utils.GameMode;
+import com.loohp.limbo.world.World;
+import net.kyori.adventure.key.Key;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packets of the join sequence which are the same for every player, serialized once and shared by all connections.
+ * The login packet is kept per spawn world and only has the entity id and game mode patched in for each player.
+ * Templates are rebuilt with {@link #rebuild()} whenever the worlds or the properties they were made from change.
+ */
+public class JoinPacketTemplates {
+
+    private static final String BRAND_ANNOUNCE_CHANNEL = Key.key("brand").toString();
+
+    private volatile Templates templates;
+
+    public JoinPacketTemplates() {
+        this.templates = null;
+    }
+
+    public synchronized void rebuild() throws IOException {
+        templates = new Templates();
+    }
+
+    /**
+     * Drops the current templates, they are rebuilt on next use.
+     */
+    public void invalidate() {
+        templates = null;
+    }
+
+    private Templates getTemplates() throws IOException {
+        Templates templates = this.templates;
+        if (templates == null) {
+            synchronized (this) {
+                templates = this.templates;
+                if (templates == null) {
+                    this.templates = templates = new Templates();
+                }
+            }
+        }
+        return templates;
+    }
+
+    public PacketTemplate getRegistryData() throws IOException {
+        return getTemplates().registryData;
+    }
+
+    public PacketTemplate getBrand() throws IOException {
+        return getTemplates().brand;
+    }
+
+    public PacketTemplate getPlayerListHeaderFooter() throws IOException {
+        return getTemplates().headerFooter;
+    }
+
+    public LoginTemplate getLogin(World world) throws IOException {
+        Templates templates = getTemplates();
+        try {
+            return templates.logins.computeIfAbsent(world, each -> {
+                try {
+                    return new LoginTemplate(templates.worlds, each);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class Templates {
+
+        private final PacketTemplate registryData;
+        private final PacketTemplate brand;
+        private final PacketTemplate headerFooter;
+        private final List<World> worlds;
+        private final Map<World, LoginTemplate> logins;
+
+        private Templates() throws IOException {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+            this.registryData = new PacketTemplate(new ClientboundRegistryDataPacket(Limbo.getInstance().getDimensionRegistry().getCodec()));
+
+            ByteArrayOutputStream brandOut = new ByteArrayOutputStream();
+            DataTypeIO.writeString(new DataOutputStream(brandOut), properties.getServerModName(), StandardCharsets.UTF_8);
+            this.brand = new PacketTemplate(new PacketPlayOutPluginMessaging(BRAND_ANNOUNCE_CHANNEL, brandOut.toByteArray()));
+
+            this.headerFooter = new PacketTemplate(new PacketPlayOutPlayerListHeaderFooter(properties.getTabHeader(), properties.getTabFooter()));
+
+            this.worlds = new ArrayList<>(Limbo.getInstance().getWorlds());
+            this.logins = new ConcurrentHashMap<>();
+            for (World world : worlds) {
+                logins.put(world, new LoginTemplate(worlds, world));
+            }
+        }
+
+    }
+
+    /**
+     * A packet together with its serialized bytes, the bytes are shared and must not be modified.
+     */
+    public static class PacketTemplate {
+
+        private final PacketOut packet;
+        private final byte[] bytes;
+
+        public PacketTemplate(PacketOut packet) throws IOException {
+            this.packet = packet;
+            this.bytes = packet.serializePacket();
+        }
+
+        public PacketOut getPacket() {
+            return packet;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+    }
+
+    public static class LoginTemplate {
+
+        private final List<World> worlds;
+        private final World world;
+        private final byte[] bytes;
+        private final int entityIdOffset;
+        private final int gamemodeOffset;
+
+        private LoginTemplate(List<World> worlds, World world) throws IOException {
+            this.worlds = worlds;
+            this.world = world;
+            PacketPlayOutLogin packet = createPacket(0, Limbo.getInstance().getServerProperties().getDefaultGamemode());
+            this.bytes = packet.serializePacket();
+            //the entity id follows the packet id, the game mode precedes the previous game mode, three flags and the portal cooldown
+            this.entityIdOffset = DataTypeIO.getVarIntLength(packet.getPacketId());
+            this.gamemodeOffset = bytes.length - DataTypeIO.getVarIntLength(packet.getPortalCooldown()) - 5;
+        }
+
+        public World getWorld() {
+            return world;
+        }
+
+        public PacketPlayOutLogin createPacket(int entityId, GameMode gamemode) {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+            return new PacketPlayOutLogin(entityId, false, worlds, (byte) properties.getMaxPlayers(), 8, 8, properties.isReducedDebugInfo(), true, false, world.getEnvironment(), world, 0, gamemode, false, true, 0);
+        }
+
+        /**
+         * Returns a copy of the template bytes with the given entity id and game mode.
+         */
+        public byte[] getBytes(int entityId, GameMode gamemode) {
+            byte[] bytes = this.bytes.clone();
+            bytes[entityIdOffset] = (byte) (entityId >>> 24);
+            bytes[entityIdOffset + 1] = (byte) (entityId >>> 16);
+            bytes[entityIdOffset + 2] = (byte) (entityId >>> 8);
+            bytes[entityIdOffset + 3] = (byte) entityId;
+            bytes[gamemodeOffset] = (byte) gamemode.getId();
+            return bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketIn;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bridges a non-blocking {@link SocketChannel} to a {@link ClientConnection}.
+ * Incoming frames are queued and handled one at a time on the session executor,
+ * so packet handlers of a single connection never run concurrently.
+ */
+public class NioConnection {
+
+    public static final int MAX_FRAME_SIZE = 2097151;
+
+    //a client that stops reading is dropped once this much is waiting for it
+    public static final int MAX_OUTBOUND_BYTES = 16777216;
+    //reading pauses while this much is waiting for the session executor and resumes below half of it
+    public static final int MAX_INBOUND_BYTES = 4194304;
+
+    private static final byte[] LEGACY_PING = new byte[0];
+    private static final byte[] CLOSED = new byte[0];
+
+    private final NioEventLoop eventLoop;
+    private final SocketChannel socketChannel;
+    private final ClientConnection clientConnection;
+    private final Executor sessionExecutor;
+
+    private final Queue<byte[]> inbound;
+    private final AtomicInteger inboundBytes;
+    private final AtomicBoolean scheduled;
+    private final Queue<ByteBuffer> outbound;
+    private int outboundBytes;
+    private final AtomicBoolean closed;
+    private SelectionKey key;
+    private byte[] cumulation;
+    private boolean firstFrame;
+    private boolean writeInterest;
+    private volatile boolean closing;
+    private volatile boolean readPaused;
+
+    NioConnection(NioEventLoop eventLoop, SocketChannel socketChannel, ClientConnection clientConnection, Executor sessionExecutor) {
+        this.eventLoop = eventLoop;
+        this.socketChannel = socketChannel;
+        this.clientConnection = clientConnection;
+        this.sessionExecutor = sessionExecutor;
+        this.inbound = new ConcurrentLinkedQueue<>();
+        this.inboundBytes = new AtomicInteger();
+        this.scheduled = new AtomicBoolean(false);
+        this.outbound = new ArrayDeque<>();
+        this.closed = new AtomicBoolean(false);
+        this.cumulation = null;
+        this.firstFrame = true;
+        this.writeInterest = false;
+        this.closing = false;
+        this.readPaused = false;
+    }
+
+    protected void register(Selector selector) throws IOException {
+        key = socketChannel.register(selector, SelectionKey.OP_READ, this);
+        clientConnection.open(new DataInputStream(new ByteArrayInputStream(new byte[0])), new DataOutputStream(new NioOutputStream()), new NioByteChannel());
+    }
+
+    protected void read(ByteBuffer buffer) throws IOException {
+        if (socketChannel.read(buffer) < 0) {
+            closeNow();
+            return;
+        }
+        ((Buffer) buffer).flip();
+        ByteBuffer in = buffer;
+        if (cumulation != null) {
+            in = ByteBuffer.allocate(cumulation.length + buffer.remaining());
+            ((Buffer) in.put(cumulation).put(buffer)).flip();
+            cumulation = null;
+        }
+        while (in.hasRemaining()) {
+            ((Buffer) in).mark();
+            int length = readVarInt(in);
+            if (length < 0) {
+                ((Buffer) in).reset();
+                break;
+            }
+            if (firstFrame) {
+                firstFrame = false;
+                //legacy ping
+                if (length == 0xFE) {
+                    ((Buffer) in).position(in.limit());
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    inbound.add(LEGACY_PING);
+                    break;
+                }
+            }
+            if (length == 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (in.remaining() < length) {
+                ((Buffer) in).reset();
+                break;
+            }
+            byte[] frame = new byte[length];
+            in.get(frame);
+            inbound.add(frame);
+            inboundBytes.addAndGet(length);
+        }
+        if (in.hasRemaining()) {
+            cumulation = new byte[in.remaining()];
+            in.get(cumulation);
+        }
+        if (inboundBytes.get() > MAX_INBOUND_BYTES) {
+            readPaused = true;
+            updateInterest();
+            //drain may have caught up before the pause became visible to it
+            if (inboundBytes.get() <= MAX_INBOUND_BYTES / 2) {
+                resumeReading();
+            }
+        }
+        schedule();
+    }
+
+    private void resumeReading() {
+        if (readPaused) {
+            readPaused = false;
+            updateInterest();
+        }
+    }
+
+    private void schedule() {
+        if (!inbound.isEmpty() && scheduled.compareAndSet(false, true)) {
+            sessionExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            byte[] frame;
+            while ((frame = inbound.poll()) != null) {
+                if (inboundBytes.addAndGet(-frame.length) <= MAX_INBOUND_BYTES / 2 && readPaused) {
+                    eventLoop.execute(this::resumeReading);
+                }
+                if (frame == CLOSED) {
+                    inbound.clear();
+                    clientConnection.terminate();
+                    return;
+                }
+                if (closing || !socketChannel.isOpen()) {
+                    continue;
+                }
+                try {
+                    if (frame == LEGACY_PING) {
+                        clientConnection.handleLegacyPing();
+                    } else {
+                        clientConnection.establish();
+                        PacketIn packetIn = clientConnection.getChannel().decodeFrame(frame);
+                        if (packetIn != null) {
+                            clientConnection.handlePacket(packetIn);
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    close();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            schedule();
+        }
+    }
+
+    /**
+     * Writes as much as the socket accepts right away, the rest is copied and queued so the caller may reuse its buffer.
+     */
+    protected void write(ByteBuffer buffer) throws IOException {
+        synchronized (outbound) {
+            if (closed.get() || closing) {
+                throw new IOException("Connection closed");
+            }
+            if (outbound.isEmpty()) {
+                socketChannel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            if (outboundBytes + buffer.remaining() > MAX_OUTBOUND_BYTES) {
+                closeNow();
+                throw new IOException("Client is not reading, more than " + MAX_OUTBOUND_BYTES + " bytes are queued");
+            }
+            ByteBuffer pending = ByteBuffer.allocate(buffer.remaining());
+            ((Buffer) pending.put(buffer)).flip();
+            outbound.add(pending);
+            outboundBytes += pending.remaining();
+            if (!writeInterest) {
+                writeInterest = true;
+                eventLoop.execute(this::updateInterest);
+            }
+        }
+    }
+
+    protected void flushOutbound() throws IOException {
+        synchronized (outbound) {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                outboundBytes -= socketChannel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                outbound.poll();
+            }
+            writeInterest = false;
+            if (closing) {
+                closeNow();
+            } else {
+                updateInterest();
+            }
+        }
+    }
+
+    private void updateInterest() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        synchronized (outbound) {
+            int ops = closing || readPaused ? 0 : SelectionKey.OP_READ;
+            if (writeInterest) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Closes the connection once everything queued so far has been written.
+     */
+    public void close() {
+        synchronized (outbound) {
+            if (outbound.isEmpty()) {
+                closeNow();
+            } else {
+                closing = true;
+                eventLoop.execute(this::updateInterest);
+            }
+        }
+    }
+
+    protected void closeNow() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                socketChannel.close();
+            } catch (IOException ignored) {
+            }
+            synchronized (outbound) {
+                outbound.clear();
+                outboundBytes = 0;
+            }
+            inbound.add(CLOSED);
+            schedule();
+        }
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 3; i++) {
+            if (!in.hasRemaining()) {
+                return -1;
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << (i * 7);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt is too big");
+    }
+
+    private class NioOutputStream extends OutputStream {
+
+        private byte[] buffer = new byte[256];
+        private int count = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, capacity));
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (count > 0) {
+                ByteBuffer out = ByteBuffer.wrap(buffer, 0, count);
+                count = 0;
+                NioConnection.this.write(out);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                NioConnection.this.close();
+            }
+        }
+
+    }
+
+    private class NioByteChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            NioConnection.this.write(src);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed.get() && !closing;
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A selector thread which owns the sockets of many {@link NioConnection}s.
+ * Reads are framed on this thread, everything else is handed to the session executor.
+ */
+public class NioEventLoop extends Thread {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final Executor sessionExecutor;
+    private final Queue<Runnable> tasks;
+    private final ByteBuffer readBuffer;
+
+    NioEventLoop(int index, Executor sessionExecutor) throws IOException {
+        super("Limbo-NIO-" + index);
+        this.selector = Selector.open();
+        this.sessionExecutor = sessionExecutor;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+
+    public void register(SocketChannel socketChannel, ClientConnection clientConnection) {
+        NioConnection connection = new NioConnection(this, socketChannel, clientConnection, sessionExecutor);
+        execute(() -> {
+            try {
+                connection.register(selector);
+            } catch (IOException e) {
+                connection.close();
+            }
+        });
+    }
+
+    protected void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+                while (itr.hasNext()) {
+                    SelectionKey key = itr.next();
+                    itr.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flushOutbound();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            ((Buffer) readBuffer).clear();
+                            connection.read(readBuffer);
+                        }
+                    } catch (Exception e) {
+                        connection.closeNow();
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
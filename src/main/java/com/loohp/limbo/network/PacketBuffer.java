@@ -0,0 +1,168 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable direct buffer outgoing frames are serialized into, so they can be handed to the socket without copying.
+ * Buffers are recycled through a small pool, call {@link #release()} once the contents have been written.
+ */
+public class PacketBuffer extends OutputStream {
+
+    //Buffer methods are called through casts, the covariant ByteBuffer overrides of Java 9+ do not exist on Java 8
+
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_POOLED_CAPACITY = 1048576;
+    private static final int MAX_POOLED = 64;
+
+    private static final Queue<PacketBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger(0);
+
+    public static PacketBuffer acquire() {
+        PacketBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return new PacketBuffer(INITIAL_CAPACITY);
+        }
+        POOLED.decrementAndGet();
+        return buffer;
+    }
+
+    private ByteBuffer buffer;
+    private final DataOutputStream dataOutput;
+
+    private PacketBuffer(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.dataOutput = new DataOutputStream(this);
+    }
+
+    /**
+     * A reusable {@link DataOutputStream} writing into this buffer.
+     */
+    public DataOutputStream getDataOutput() {
+        return dataOutput;
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    private void ensureWritable(int length) {
+        if (buffer.remaining() < length) {
+            int capacity = buffer.capacity();
+            int required = buffer.position() + length;
+            while (capacity < required) {
+                capacity <<= 1;
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+            ((Buffer) buffer).flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureWritable(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureWritable(len);
+        buffer.put(b, off, len);
+    }
+
+    /**
+     * Reserves bytes to be filled in later, for example a length prefix.
+     */
+    public void skip(int length) {
+        ensureWritable(length);
+        ((Buffer) buffer).position(buffer.position() + length);
+    }
+
+    /**
+     * Discards everything written from the given index on.
+     */
+    public void truncate(int index) {
+        ((Buffer) buffer).position(index);
+    }
+
+    public void setByte(int index, int value) {
+        buffer.put(index, (byte) value);
+    }
+
+    /**
+     * Writes a VarInt padded to exactly three bytes at the given index, large enough for any frame length.
+     */
+    public void setVarInt21(int index, int value) {
+        if ((value & 0xFFE00000) != 0) {
+            throw new IllegalArgumentException("Value " + value + " does not fit in three bytes");
+        }
+        buffer.put(index, (byte) (value & 0x7F | 0x80));
+        buffer.put(index + 1, (byte) ((value >>> 7) & 0x7F | 0x80));
+        buffer.put(index + 2, (byte) (value >>> 14));
+    }
+
+    public byte[] getBytes(int index, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(index);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A view of the bytes written from the given index, sharing the content of this buffer.
+     */
+    public ByteBuffer nioBuffer(int index) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).flip();
+        ((Buffer) view).position(index);
+        return view;
+    }
+
+    public void clear() {
+        ((Buffer) buffer).clear();
+    }
+
+    public void release() {
+        clear();
+        if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        if (POOLED.incrementAndGet() > MAX_POOLED) {
+            POOLED.decrementAndGet();
+            return;
+        }
+        POOL.add(this);
+    }
+
+}
@@ -20,30 +20,81 @@
 package com.loohp.limbo.network;
 
 import com.loohp.limbo.Limbo;
+import com.loohp.limbo.utils.LatencyHistogram;
+import com.loohp.limbo.utils.ThreadUtils;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class ServerConnection extends Thread {
 	
+	private static final long KEEP_ALIVE_SWEEP_INTERVAL = 1000;
+	private static final int DEFAULT_WORKER_THREADS = 8;
+	
 	private ServerSocket serverSocket;
 	private List<ClientConnection> clients;
 	private String ip;
 	private int port;
+	private Transport transport;
+	private int ioThreads;
+	private int workerThreads;
+	private boolean virtualThreads;
+	private ThreadFactory sessionThreadFactory;
+	private ThreadFactory writerThreadFactory;
+	private NioEventLoop[] eventLoops;
+	private Executor sessionExecutor;
+	private Executor chunkExecutor;
+	private ScheduledExecutorService timer;
+	private final LatencyHistogram joinLatency;
 
 	public ServerConnection(String ip, int port) {
-		clients = new ArrayList<ClientConnection>();
+		this(ip, port, Transport.BLOCKING, 0, DEFAULT_WORKER_THREADS, false);
+	}
+
+	public ServerConnection(String ip, int port, Transport transport, int ioThreads, int workerThreads, boolean virtualThreads) {
+		clients = Collections.synchronizedList(new ArrayList<ClientConnection>());
+		joinLatency = new LatencyHistogram();
 		this.ip = ip;
 		this.port = port;
+		this.transport = transport;
+		this.ioThreads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+		if (virtualThreads && !ThreadUtils.isVirtualThreadsSupported()) {
+			Limbo.getInstance().getConsole().sendMessage("Virtual threads are not supported by this Java version, falling back to platform threads");
+			virtualThreads = false;
+		}
+		this.virtualThreads = virtualThreads;
+		this.sessionThreadFactory = ThreadUtils.newThreadFactory("Limbo-Session-", virtualThreads);
+		this.workerThreads = workerThreads;
+		this.chunkExecutor = ThreadUtils.newWorkerPool("Limbo-Chunk-Sender-", workerThreads, virtualThreads);
+		this.writerThreadFactory = ThreadUtils.newThreadFactory("Limbo-Writer-", virtualThreads);
+		this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Limbo-Network-Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.scheduleAtFixedRate(this::sweepKeepAlive, KEEP_ALIVE_SWEEP_INTERVAL, KEEP_ALIVE_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
 		start();
 	}
 	
 	@Override
 	public void run() {
+		if (transport == Transport.NIO) {
+			runNio();
+			return;
+		}
 		try {
 			serverSocket = new ServerSocket(port, 50, InetAddress.getByName(ip));
 			Limbo.getInstance().getConsole().sendMessage("Limbo server listening on /" + serverSocket.getInetAddress().getHostName() + ":" + serverSocket.getLocalPort());
@@ -51,13 +102,61 @@ public class ServerConnection extends Thread {
 	            Socket connection = serverSocket.accept();
 	            ClientConnection sc = new ClientConnection(connection);
 	            clients.add(sc);
-	            sc.start();
+	            sessionThreadFactory.newThread(sc).start();
 	        }
 	    } catch(IOException e) {
 	        e.printStackTrace();
 	    }
 	}
 
+	private void runNio() {
+		try {
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(InetAddress.getByName(ip), port), 50);
+			serverSocket = serverChannel.socket();
+			sessionExecutor = ThreadUtils.newWorkerPool("Limbo-Session-", workerThreads, virtualThreads);
+			eventLoops = new NioEventLoop[ioThreads];
+			for (int i = 0; i < eventLoops.length; i++) {
+				eventLoops[i] = new NioEventLoop(i, sessionExecutor);
+				eventLoops[i].start();
+			}
+			Limbo.getInstance().getConsole().sendMessage("Limbo server listening on /" + serverSocket.getInetAddress().getHostName() + ":" + serverSocket.getLocalPort() + " (nio, " + eventLoops.length + " io threads)");
+			int next = 0;
+			while (true) {
+				SocketChannel connection = serverChannel.accept();
+				connection.configureBlocking(false);
+				connection.socket().setKeepAlive(true);
+				ClientConnection sc = new ClientConnection(connection.socket());
+				clients.add(sc);
+				eventLoops[next].register(connection, sc);
+				next = (next + 1) % eventLoops.length;
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends due keep-alives to every connection and disconnects those which stopped answering.
+	 * Timed out connections are only handed their disconnect packet and closed once it is written, so one dead socket never holds up the sweep.
+	 */
+	private void sweepKeepAlive() {
+		long now = System.currentTimeMillis();
+		ClientConnection[] snapshot;
+		synchronized (clients) {
+			snapshot = clients.toArray(new ClientConnection[0]);
+		}
+		for (ClientConnection client : snapshot) {
+			try {
+				if (client.keepAlive(now)) {
+					client.timeOut();
+				}
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	public ServerSocket getServerSocket() {
 		return serverSocket;
 	}
@@ -66,4 +165,48 @@ public class ServerConnection extends Thread {
 		return clients;
 	}
 
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * The executor chunks are serialized and sent to players on, away from the tick thread.
+	 * Joins that waited for a skin lookup are finished on it as well.
+	 */
+	public Executor getChunkExecutor() {
+		return chunkExecutor;
+	}
+
+	/**
+	 * The timer keep-alives are swept on, scheduled tasks must never block.
+	 */
+	public ScheduledExecutorService getTimer() {
+		return timer;
+	}
+
+	/**
+	 * Creates the threads queued packets are written to blocking sockets on, one per connection,
+	 * so a slow client never stalls the thread that queued them or any other connection.
+	 */
+	public ThreadFactory getWriterThreadFactory() {
+		return writerThreadFactory;
+	}
+
+	/**
+	 * Time from the login handshake until the join sequence has been sent, for every player that joined.
+	 */
+	public LatencyHistogram getJoinLatency() {
+		return joinLatency;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public enum Transport {
+
+		BLOCKING, NIO;
+
+	}
+
 }
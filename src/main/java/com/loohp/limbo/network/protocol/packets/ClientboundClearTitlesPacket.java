@@ -19,7 +19,6 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -36,14 +35,9 @@ public class ClientboundClearTitlesPacket extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		output.writeBoolean(reset);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -20,64 +20,94 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.registry.Registry;
-import com.loohp.limbo.utils.BitsUtils;
 import com.loohp.limbo.utils.DataTypeIO;
+import com.loohp.limbo.world.BlockSection;
 import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.GeneratedBlockDataMappings;
 import net.kyori.adventure.key.Key;
 import net.querz.mca.Chunk;
-import net.querz.mca.Section;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.LinkedList;
-import java.util.List;
 
 public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 
 	private int chunkX;
 	private int chunkZ;
 	private Chunk chunk;
+	private BlockSection[] blockSections;
 	private Environment environment;
 	private long[] skyLightBitMasks;
 	private long[] blockLightBitMasks;
 	private long[] skyLightBitMasksEmpty;
 	private long[] blockLightBitMasksEmpty;
-	private List<Byte[]> skylightArrays;
-	private List<Byte[]> blocklightArrays;
-
-	public ClientboundLevelChunkWithLightPacket(int chunkX, int chunkZ, Chunk chunk, Environment environment, List<Byte[]> skylightArrays, List<Byte[]> blocklightArrays) {
+	private byte[][] skyLightSections;
+	private byte[][] blockLightSections;
+
+	private ClientboundLevelChunkWithLightPacket template;
+	private byte[] serialized;
+
+	/**
+	 * The light arrays are the packed nibble arrays of the 18 light sections from the bottom up, a null section is sent as completely dark.
+	 * The light of the chunk is left out when the arrays are null.
+	 * The blocks are taken from the 16 block sections from the bottom up, where a null section is empty.
+	 */
+	public ClientboundLevelChunkWithLightPacket(int chunkX, int chunkZ, Chunk chunk, BlockSection[] blockSections, Environment environment, byte[][] skyLightSections, byte[][] blockLightSections) {
 		this.chunkX = chunkX;
 		this.chunkZ = chunkZ;
 		this.chunk = chunk;
+		this.blockSections = blockSections == null ? new BlockSection[0] : blockSections;
 		this.environment = environment;
-		this.skylightArrays = skylightArrays;
-		this.blocklightArrays = blocklightArrays;
+		this.skyLightSections = skyLightSections == null ? new byte[0][] : skyLightSections;
+		this.blockLightSections = blockLightSections == null ? new byte[0][] : blockLightSections;
 
 		BitSet skyLightBitSet = new BitSet();
 		BitSet skyLightBitSetInverse = new BitSet();
-		for (int i = Math.min(17, skylightArrays.size() - 1); i >= 0; i--) {
-			skyLightBitSet.set(i, skylightArrays.get(i) != null);
-			skyLightBitSetInverse.set(i, skylightArrays.get(i) == null);
+		for (int i = 0; i < this.skyLightSections.length; i++) {
+			skyLightBitSet.set(i, this.skyLightSections[i] != null);
+			skyLightBitSetInverse.set(i, this.skyLightSections[i] == null);
 		}
 		skyLightBitMasks = skyLightBitSet.toLongArray();
 		skyLightBitMasksEmpty = skyLightBitSetInverse.toLongArray();
 
 		BitSet blockLightBitSet = new BitSet();
 		BitSet blockLightBitSetInverse = new BitSet();
-		for (int i = Math.min(17, blocklightArrays.size() - 1); i >= 0; i--) {
-			blockLightBitSet.set(i, blocklightArrays.get(i) != null);
-			blockLightBitSetInverse.set(i, blocklightArrays.get(i) == null);
+		for (int i = 0; i < this.blockLightSections.length; i++) {
+			blockLightBitSet.set(i, this.blockLightSections[i] != null);
+			blockLightBitSetInverse.set(i, this.blockLightSections[i] == null);
 		}
 		blockLightBitMasks = blockLightBitSet.toLongArray();
 		blockLightBitMasksEmpty = blockLightBitSetInverse.toLongArray();
 	}
 
+	private ClientboundLevelChunkWithLightPacket(ClientboundLevelChunkWithLightPacket template, int chunkX, int chunkZ) {
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.chunk = template.chunk;
+		this.blockSections = template.blockSections;
+		this.environment = template.environment;
+		this.skyLightSections = template.skyLightSections;
+		this.blockLightSections = template.blockLightSections;
+		this.skyLightBitMasks = template.skyLightBitMasks;
+		this.blockLightBitMasks = template.blockLightBitMasks;
+		this.skyLightBitMasksEmpty = template.skyLightBitMasksEmpty;
+		this.blockLightBitMasksEmpty = template.blockLightBitMasksEmpty;
+		this.template = template;
+	}
+
+	/**
+	 * Creates the same chunk at another position, the serialized data of this packet is reused with only the position patched.
+	 */
+	public ClientboundLevelChunkWithLightPacket relocate(int chunkX, int chunkZ) {
+		return new ClientboundLevelChunkWithLightPacket(template == null ? this : template, chunkX, chunkZ);
+	}
+
 	public Chunk getChunk() {
 		return chunk;
 	}
@@ -90,6 +120,10 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 		return chunkZ;
 	}
 
+	public BlockSection[] getBlockSections() {
+		return blockSections;
+	}
+
 	public Environment getEnvironment() {
 		return environment;
 	}
@@ -102,20 +136,37 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 		return blockLightBitMasks;
 	}
 
-	public List<Byte[]> getSkylightArrays() {
-		return skylightArrays;
+	public byte[][] getSkyLightSections() {
+		return skyLightSections;
 	}
 
-	public List<Byte[]> getBlocklightArrays() {
-		return blocklightArrays;
+	public byte[][] getBlockLightSections() {
+		return blockLightSections;
 	}
 
+	/**
+	 * The serialized data is computed once and shared by every send of this packet, it must not be modified.
+	 */
 	@Override
-	public byte[] serializePacket() throws IOException {
+	public synchronized byte[] serializePacket() throws IOException {
+		if (serialized == null) {
+			if (template != null) {
+				byte[] bytes = template.serializePacket().clone();
+				//chunk position follows the single byte packet id
+				ByteBuffer.wrap(bytes, 1, 8).putInt(chunkX).putInt(chunkZ);
+				serialized = bytes;
+			} else {
+				serialized = serialize();
+			}
+		}
+		return serialized;
+	}
+
+	private byte[] serialize() throws IOException {
 		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
 		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+		output.writeByte(getPacketId());
 
 		output.writeInt(chunkX);
 		output.writeInt(chunkZ);
@@ -123,101 +174,16 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 
 		ByteArrayOutputStream dataBuffer = new ByteArrayOutputStream();
 		DataOutputStream dataOut = new DataOutputStream(dataBuffer);
+		SectionEncoder encoder = new SectionEncoder();
 		for (int i = 0; i < 16; i++) {
-			Section section = chunk.getSection(i);
-			if (section != null) {
-				short counter = 0;
-				for (int x = 0; x < 16; x++) {
-					for (int z = 0; z < 16; z++) {
-						for (int y = 0; y < 16; y++) {
-							CompoundTag tag = section.getBlockStateAt(x, y, z);
-							if (tag != null && !tag.getString("Name").equals("minecraft:air")) {
-								counter++;
-							}
-						}
-					}
-				}
-				dataOut.writeShort(counter);
-
-				int newBits = 32 - Integer.numberOfLeadingZeros(section.getPalette().size() - 1);
-				newBits = Math.max(newBits, 4);
-				//Limbo.getInstance().getConsole().sendMessage(i + " " + newBits);
-				if (newBits <= 8) {
-					dataOut.writeByte(newBits);
-
-					DataTypeIO.writeVarInt(dataOut, section.getPalette().size());
-					//Limbo.getInstance().getConsole().sendMessage(section.getPalette().size());
-					//Limbo.getInstance().getConsole().sendMessage("Nonnull -> " + i + " " + newBits);
-					for (CompoundTag tag : section.getPalette()) {
-						DataTypeIO.writeVarInt(dataOut, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(tag));
-						//Limbo.getInstance().getConsole().sendMessage(tag + " -> " + GeneratedDataUtils.getGlobalPaletteIDFromState(tag));
-					}
-
-					BitSet bits = BitSet.valueOf(section.getBlockStates());
-					int shift = 64 % newBits;
-					int longsNeeded = (int) Math.ceil(4096 / (double) (64 / newBits));
-					for (int u = 64; u <= bits.length(); u += 64) {
-						BitsUtils.shiftAfter(bits, u - shift, shift);
-					}
-
-					long[] formattedLongs = bits.toLongArray();
-					//Limbo.getInstance().getConsole().sendMessage(longsNeeded + "");
-
-					DataTypeIO.writeVarInt(dataOut, longsNeeded);
-					for (int u = 0; u < longsNeeded; u++) {
-						if (u < formattedLongs.length) {
-							dataOut.writeLong(formattedLongs[u]);
-						} else {
-							dataOut.writeLong(0);
-						}
-						//Limbo.getInstance().getConsole().sendMessage(Arrays.toString(section.getBlockStates()));
-					}
-				} else {
-					try {
-						dataOut.writeByte(16);
-						section.getBlockStates();
-						int longsNeeded = 1024;
-						List<Integer> list = new LinkedList<>();
-						for (int y = 0; y < 16; y++) {
-							for (int z = 0; z < 16; z++) {
-								for (int x = 0; x < 16; x++) {
-									list.add(GeneratedBlockDataMappings.getGlobalPaletteIDFromState(section.getBlockStateAt(x, y, z)));
-								}
-							}
-						}
-						List<Long> globalLongs = new ArrayList<>();
-						long currentLong = 0;
-						int pos = 0;
-						int u = 0;
-						while (pos < longsNeeded) {
-							if (u == 3) {
-								globalLongs.add(currentLong);
-								currentLong = 0;
-								u = 0;
-								pos++;
-							} else {
-								u++;
-							}
-							int id = list.isEmpty() ? 0 : list.remove(0);
-							currentLong = currentLong << 16;
-							currentLong |= id;
-						}
-						DataTypeIO.writeVarInt(dataOut, longsNeeded);
-						for (int j = 0; j < longsNeeded; j++) {
-							if (j < globalLongs.size()) {
-								dataOut.writeLong(globalLongs.get(j));
-							} else {
-								dataOut.writeLong(0);
-							}
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
+			BlockSection section = i < blockSections.length ? blockSections[i] : null;
+			if (section != null && !section.isEmpty()) {
+				dataOut.writeShort(section.getNonAirCount());
+				encoder.write(dataOut, section);
 			} else {
 				dataOut.writeShort(0);
 				dataOut.writeByte(0);
-				DataTypeIO.writeVarInt(dataOut, 0);
+				DataTypeIO.writeVarInt(dataOut, GeneratedBlockDataMappings.getAirStateID());
 				DataTypeIO.writeVarInt(dataOut, 0);
 			}
 			int biome;
@@ -247,7 +213,9 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 			int z = each.getInt("z") % 16;
 			output.writeByte(((x & 15) << 4) | (z & 15));
 			output.writeShort(y);
-			Integer id = Registry.BLOCK_ENTITY_TYPE.getId(Key.key(chunk.getBlockStateAt(x, y, z).getString("Name")));
+			BlockSection section = y >= 0 && (y >> 4) < blockSections.length ? blockSections[y >> 4] : null;
+			int stateID = section == null ? GeneratedBlockDataMappings.getAirStateID() : section.get(x, y, z);
+			Integer id = Registry.BLOCK_ENTITY_TYPE.getId(Key.key(GeneratedBlockDataMappings.getStateFromGlobalPaletteID(stateID).getString("Name")));
 			DataTypeIO.writeVarInt(output, id == null ? -1 : id);
 			DataTypeIO.writeTag(output, each);
 		}
@@ -269,31 +237,105 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 			output.writeLong(l);
 		}
 
-		DataTypeIO.writeVarInt(output, skylightArrays.stream().mapToInt(each -> each == null ? 0 : 1).sum());
-		for (int i = skylightArrays.size() - 1; i >= 0; i--) {
-			Byte[] array = skylightArrays.get(i);
-			if (array != null) {
-				DataTypeIO.writeVarInt(output, 2048);
-				//System.out.println(Arrays.toString(ArrayUtils.toPrimitive(array)));
-				for (int u = 0; u < array.length; u++) {
-					output.writeByte(array[u]);
-				}
+		writeLightSections(output, skyLightSections);
+		writeLightSections(output, blockLightSections);
+
+		return buffer.toByteArray();
+	}
+
+	private static void writeLightSections(DataOutputStream output, byte[][] sections) throws IOException {
+		int count = 0;
+		for (byte[] section : sections) {
+			if (section != null) {
+				count++;
+			}
+		}
+		DataTypeIO.writeVarInt(output, count);
+		for (byte[] section : sections) {
+			if (section != null) {
+				DataTypeIO.writeVarInt(output, section.length);
+				output.write(section);
 			}
 		}
+	}
+
+	/**
+	 * Writes paletted containers of block sections, packing the entries into a reused array.
+	 * Palette entries no longer used by a section are left out, so the entries are packed as small as possible.
+	 */
+	private static class SectionEncoder {
+
+		private final long[] packed = new long[BlockSection.longsNeeded(BlockSection.MAX_PALETTE_BITS)];
+		private final int[] counts = new int[1 << BlockSection.MAX_PALETTE_BITS];
+		private final int[] remapping = new int[1 << BlockSection.MAX_PALETTE_BITS];
+		private final int[] palette = new int[1 << BlockSection.MAX_PALETTE_BITS];
+
+		private void write(DataOutputStream output, BlockSection section) throws IOException {
+			//the section must not be resized while it is being read
+			synchronized (section) {
+				write0(output, section);
+			}
+		}
+
+		private void write0(DataOutputStream output, BlockSection section) throws IOException {
+			int[] sectionPalette = section.getPalette();
+			long[] data = section.getData();
+			int sectionBits = section.getBits();
+			if (sectionPalette == null) {
+				output.writeByte(sectionBits);
+				DataTypeIO.writeVarInt(output, data.length);
+				for (long l : data) {
+					output.writeLong(l);
+				}
+				return;
+			}
 
-		DataTypeIO.writeVarInt(output, blocklightArrays.stream().mapToInt(each -> each == null ? 0 : 1).sum());
-		for (int i = blocklightArrays.size() - 1; i >= 0; i--) {
-			Byte[] array = blocklightArrays.get(i);
-			if (array != null) {
-				DataTypeIO.writeVarInt(output, 2048);
-				//System.out.println(Arrays.toString(ArrayUtils.toPrimitive(array)));
-				for (int u = 0; u < array.length; u++) {
-					output.writeByte(array[u]);
+			int valuesPerLong = 64 / sectionBits;
+			long mask = (1L << sectionBits) - 1;
+			Arrays.fill(counts, 0, sectionPalette.length, 0);
+			for (int i = 0; i < BlockSection.SIZE; i++) {
+				counts[(int) ((data[i / valuesPerLong] >>> ((i % valuesPerLong) * sectionBits)) & mask)]++;
+			}
+			int paletteSize = 0;
+			for (int i = 0; i < sectionPalette.length; i++) {
+				if (counts[i] > 0) {
+					remapping[i] = paletteSize;
+					palette[paletteSize++] = sectionPalette[i];
 				}
 			}
+
+			if (paletteSize == 1) {
+				output.writeByte(0);
+				DataTypeIO.writeVarInt(output, palette[0]);
+				DataTypeIO.writeVarInt(output, 0);
+				return;
+			}
+
+			int bits = Math.max(BlockSection.MIN_BITS, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+			output.writeByte(bits);
+			DataTypeIO.writeVarInt(output, paletteSize);
+			for (int i = 0; i < paletteSize; i++) {
+				DataTypeIO.writeVarInt(output, palette[i]);
+			}
+			int longsNeeded = BlockSection.longsNeeded(bits);
+			DataTypeIO.writeVarInt(output, longsNeeded);
+			if (bits == sectionBits && paletteSize == sectionPalette.length) {
+				for (long l : data) {
+					output.writeLong(l);
+				}
+				return;
+			}
+			Arrays.fill(packed, 0, longsNeeded, 0);
+			int packedValuesPerLong = 64 / bits;
+			for (int i = 0; i < BlockSection.SIZE; i++) {
+				long value = remapping[(int) ((data[i / valuesPerLong] >>> ((i % valuesPerLong) * sectionBits)) & mask)];
+				packed[i / packedValuesPerLong] |= value << ((i % packedValuesPerLong) * bits);
+			}
+			for (int i = 0; i < longsNeeded; i++) {
+				output.writeLong(packed[i]);
+			}
 		}
 
-		return buffer.toByteArray();
 	}
 
 }
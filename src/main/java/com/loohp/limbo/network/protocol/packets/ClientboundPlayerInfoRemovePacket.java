@@ -0,0 +1,50 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network.protocol.packets;
+
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+public class ClientboundPlayerInfoRemovePacket extends PacketOut {
+
+	private List<UUID> uuids;
+
+	public ClientboundPlayerInfoRemovePacket(List<UUID> uuids) {
+		this.uuids = uuids;
+	}
+
+	public List<UUID> getUuids() {
+		return uuids;
+	}
+
+	@Override
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
+		DataTypeIO.writeVarInt(output, uuids.size());
+		for (UUID uuid : uuids) {
+			DataTypeIO.writeUUID(output, uuid);
+		}
+	}
+
+}
@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.querz.nbt.tag.CompoundTag;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -39,14 +38,9 @@ public class ClientboundRegistryDataPacket extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
-        output.writeByte(Packet.getConfigurationOut().get(getClass()));
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(getPacketId());
 
         DataTypeIO.writeTag(output, dimensionCodec);
-
-        return buffer.toByteArray();
     }
 }
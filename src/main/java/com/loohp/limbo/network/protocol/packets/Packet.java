@@ -20,11 +20,34 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.network.ClientConnection;
+import com.loohp.limbo.network.ClientConnection.ClientState;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public abstract class Packet {
 
+	private static final PacketDecoder[][] decoders = new PacketDecoder[ClientState.values().length][0];
+	private static final ClassValue<AtomicReference<Registration>> registrations = new ClassValue<AtomicReference<Registration>>() {
+		@Override
+		protected AtomicReference<Registration> computeValue(Class<?> type) {
+			return new AtomicReference<>();
+		}
+	};
+	private static volatile int mappingsVersion = 0;
+
+	//read only copies, mappings are changed through the setters so the decoders and registrations are rebuilt with them
 	private static Map<Integer, Class<? extends PacketIn>> handshakeIn;
 
 	private static Map<Integer, Class<? extends PacketIn>> statusIn;
@@ -44,7 +67,9 @@ public abstract class Packet {
 	}
 
 	public static void setHandshakeIn(Map<Integer, Class<? extends PacketIn>> handshakeIn) {
-		Packet.handshakeIn = handshakeIn;
+		Packet.handshakeIn = Collections.unmodifiableMap(new HashMap<>(handshakeIn));
+		mappingsVersion++;
+		decoders[ClientState.HANDSHAKE.ordinal()] = compileDecoders(handshakeIn);
 	}
 
 	public static Map<Integer, Class<? extends PacketIn>> getStatusIn() {
@@ -52,7 +77,9 @@ public abstract class Packet {
 	}
 
 	public static void setStatusIn(Map<Integer, Class<? extends PacketIn>> statusIn) {
-		Packet.statusIn = statusIn;
+		Packet.statusIn = Collections.unmodifiableMap(new HashMap<>(statusIn));
+		mappingsVersion++;
+		decoders[ClientState.STATUS.ordinal()] = compileDecoders(statusIn);
 	}
 
 	public static Map<Class<? extends PacketOut>, Integer> getStatusOut() {
@@ -60,7 +87,8 @@ public abstract class Packet {
 	}
 
 	public static void setStatusOut(Map<Class<? extends PacketOut>, Integer> statusOut) {
-		Packet.statusOut = statusOut;
+		Packet.statusOut = Collections.unmodifiableMap(new HashMap<>(statusOut));
+		mappingsVersion++;
 	}
 
 	public static Map<Integer, Class<? extends PacketIn>> getLoginIn() {
@@ -68,7 +96,9 @@ public abstract class Packet {
 	}
 
 	public static void setLoginIn(Map<Integer, Class<? extends PacketIn>> loginIn) {
-		Packet.loginIn = loginIn;
+		Packet.loginIn = Collections.unmodifiableMap(new HashMap<>(loginIn));
+		mappingsVersion++;
+		decoders[ClientState.LOGIN.ordinal()] = compileDecoders(loginIn);
 	}
 
 	public static Map<Class<? extends PacketOut>, Integer> getLoginOut() {
@@ -76,7 +106,8 @@ public abstract class Packet {
 	}
 
 	public static void setLoginOut(Map<Class<? extends PacketOut>, Integer> loginOut) {
-		Packet.loginOut = loginOut;
+		Packet.loginOut = Collections.unmodifiableMap(new HashMap<>(loginOut));
+		mappingsVersion++;
 	}
 
 	public static Map<Integer, Class<? extends PacketIn>> getConfigurationIn() {
@@ -84,7 +115,9 @@ public abstract class Packet {
 	}
 
 	public static void setConfigurationIn(Map<Integer, Class<? extends PacketIn>> configurationIn) {
-		Packet.configurationIn = configurationIn;
+		Packet.configurationIn = Collections.unmodifiableMap(new HashMap<>(configurationIn));
+		mappingsVersion++;
+		decoders[ClientState.CONFIGURATION.ordinal()] = compileDecoders(configurationIn);
 	}
 
 	public static Map<Class<? extends PacketOut>, Integer> getConfigurationOut() {
@@ -92,7 +125,8 @@ public abstract class Packet {
 	}
 
 	public static void setConfigurationOut(Map<Class<? extends PacketOut>, Integer> configurationOut) {
-		Packet.configurationOut = configurationOut;
+		Packet.configurationOut = Collections.unmodifiableMap(new HashMap<>(configurationOut));
+		mappingsVersion++;
 	}
 
 	public static Map<Integer, Class<? extends PacketIn>> getPlayIn() {
@@ -100,7 +134,9 @@ public abstract class Packet {
 	}
 
 	public static void setPlayIn(Map<Integer, Class<? extends PacketIn>> playIn) {
-		Packet.playIn = playIn;
+		Packet.playIn = Collections.unmodifiableMap(new HashMap<>(playIn));
+		mappingsVersion++;
+		decoders[ClientState.PLAY.ordinal()] = compileDecoders(playIn);
 	}
 
 	public static Map<Class<? extends PacketOut>, Integer> getPlayOut() {
@@ -108,22 +144,143 @@ public abstract class Packet {
 	}
 
 	public static void setPlayOut(Map<Class<? extends PacketOut>, Integer> playOut) {
-		Packet.playOut = playOut;
+		Packet.playOut = Collections.unmodifiableMap(new HashMap<>(playOut));
+		mappingsVersion++;
+	}
+
+	/**
+	 * Returns the decoder of an inbound packet id in a state, or null if the id is not registered.
+	 */
+	public static PacketDecoder getDecoder(ClientState state, int packetId) {
+		PacketDecoder[] stateDecoders = decoders[state.ordinal()];
+		return packetId >= 0 && packetId < stateDecoders.length ? stateDecoders[packetId] : null;
+	}
+
+	private static PacketDecoder[] compileDecoders(Map<Integer, Class<? extends PacketIn>> mappings) {
+		int size = 0;
+		for (int packetId : mappings.keySet()) {
+			size = Math.max(size, packetId + 1);
+		}
+		PacketDecoder[] compiled = new PacketDecoder[size];
+		for (Map.Entry<Integer, Class<? extends PacketIn>> entry : mappings.entrySet()) {
+			try {
+				compiled[entry.getKey()] = compileDecoder(entry.getValue());
+			} catch (Throwable e) {
+				throw new IllegalArgumentException("Unable to create a decoder for " + entry.getValue().getName(), e);
+			}
+		}
+		return compiled;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static PacketDecoder compileDecoder(Class<? extends PacketIn> packetType) throws Throwable {
+		Constructor<?> constructor = null;
+		for (Constructor<?> each : packetType.getConstructors()) {
+			Class<?>[] parameterTypes = each.getParameterTypes();
+			if (parameterTypes.length == 1 && parameterTypes[0].equals(DataInputStream.class)) {
+				constructor = each;
+				break;
+			} else if (parameterTypes.length == 3 && parameterTypes[0].equals(DataInputStream.class) && parameterTypes[1].equals(int.class) && parameterTypes[2].equals(int.class)) {
+				constructor = each;
+			}
+		}
+		if (constructor == null) {
+			throw new NoSuchMethodException(packetType + " has no valid constructors!");
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle handle = lookup.unreflectConstructor(constructor);
+		try {
+			if (constructor.getParameterCount() == 1) {
+				CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class), MethodType.methodType(Object.class, Object.class), handle, handle.type());
+				Function<DataInputStream, PacketIn> function = (Function<DataInputStream, PacketIn>) callSite.getTarget().invoke();
+				return (in, size, packetId) -> function.apply(in);
+			} else {
+				CallSite callSite = LambdaMetafactory.metafactory(lookup, "decode", MethodType.methodType(PacketDecoder.class), MethodType.methodType(PacketIn.class, DataInputStream.class, int.class, int.class), handle, handle.type());
+				return (PacketDecoder) callSite.getTarget().invoke();
+			}
+		} catch (Throwable e) {
+			//classes the generated factories cannot link against still get a method handle
+			MethodHandle generic = constructor.getParameterCount() == 1 ? MethodHandles.dropArguments(handle, 1, int.class, int.class) : handle;
+			MethodHandle decoder = generic.asType(MethodType.methodType(PacketIn.class, DataInputStream.class, int.class, int.class));
+			return (in, size, packetId) -> {
+				try {
+					return (PacketIn) decoder.invokeExact(in, size, packetId);
+				} catch (RuntimeException | IOException | Error error) {
+					throw error;
+				} catch (Throwable throwable) {
+					throw new RuntimeException(throwable);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the state and id a packet type is registered with, resolved once per type until the mappings change.
+	 */
+	protected static Registration getRegistration(Class<?> type) {
+		AtomicReference<Registration> reference = registrations.get(type);
+		Registration registration = reference.get();
+		int version = mappingsVersion;
+		if (registration == null || registration.version != version) {
+			registration = resolveRegistration(type, version);
+			reference.set(registration);
+		}
+		return registration;
+	}
+
+	private static Registration resolveRegistration(Class<?> type, int version) {
+		Object[][] mappings = {
+				{ClientState.HANDSHAKE, handshakeIn, null},
+				{ClientState.STATUS, statusIn, statusOut},
+				{ClientState.LOGIN, loginIn, loginOut},
+				{ClientState.CONFIGURATION, configurationIn, configurationOut},
+				{ClientState.PLAY, playIn, playOut}
+		};
+		for (Object[] mapping : mappings) {
+			Map<?, ?> in = (Map<?, ?>) mapping[1];
+			if (in != null) {
+				for (Map.Entry<?, ?> entry : in.entrySet()) {
+					if (entry.getValue().equals(type)) {
+						return new Registration(version, (ClientState) mapping[0], (Integer) entry.getKey());
+					}
+				}
+			}
+			Map<?, ?> out = (Map<?, ?>) mapping[2];
+			if (out != null && out.containsKey(type)) {
+				return new Registration(version, (ClientState) mapping[0], (Integer) out.get(type));
+			}
+		}
+		return new Registration(version, null, -1);
 	}
 
 	public ClientConnection.ClientState getPacketState() {
-		Class<? extends Packet> type = getClass();
-		if (handshakeIn.containsValue(type)) {
-			return ClientConnection.ClientState.HANDSHAKE;
-		} else if (loginIn.containsValue(type) || loginOut.containsKey(type)) {
-			return ClientConnection.ClientState.LOGIN;
-		} else if (configurationIn.containsValue(type) || configurationOut.containsKey(type)) {
-			return ClientConnection.ClientState.CONFIGURATION;
-		} else if (playIn.containsValue(type) || playOut.containsKey(type)) {
-			return ClientConnection.ClientState.PLAY;
-		} else {
+		ClientState state = getRegistration(getClass()).state;
+		if (state == null) {
 			throw new IllegalStateException("This packet is not registered!");
 		}
+		return state;
+	}
+
+	protected static class Registration {
+
+		private final int version;
+		private final ClientState state;
+		private final int packetId;
+
+		private Registration(int version, ClientState state, int packetId) {
+			this.version = version;
+			this.state = state;
+			this.packetId = packetId;
+		}
+
+		public ClientState getState() {
+			return state;
+		}
+
+		public int getPacketId() {
+			return packetId;
+		}
+
 	}
 
 }
@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.key.Key;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -56,18 +55,13 @@ public class PacketLoginOutPluginMessaging extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getLoginOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeVarInt(output, messageId);
 		DataTypeIO.writeString(output, channel.toString(), StandardCharsets.UTF_8);
 		if (data != null) {
 			output.write(data);
 		}
-		
-		return buffer.toByteArray();
 	}
 
 }
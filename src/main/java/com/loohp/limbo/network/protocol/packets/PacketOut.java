@@ -19,10 +19,58 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 public abstract class PacketOut extends Packet {
+
+	//the defaults call each other, so they are only used once the other method has been overridden
+	private static final ClassValue<Boolean> OVERRIDES_WRITE = overrides("write", DataOutputStream.class);
+	private static final ClassValue<Boolean> OVERRIDES_SERIALIZE = overrides("serializePacket");
+
+	private static ClassValue<Boolean> overrides(String name, Class<?>... parameterTypes) {
+		return new ClassValue<Boolean>() {
+			@Override
+			protected Boolean computeValue(Class<?> type) {
+				try {
+					return type.getMethod(name, parameterTypes).getDeclaringClass() != PacketOut.class;
+				} catch (NoSuchMethodException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
 	
-	public abstract byte[] serializePacket() throws IOException;
+	/**
+	 * Writes the packet id and body straight into the outgoing frame.
+	 * Packets override either this or {@link #serializePacket()}, the default writes the serialized bytes.
+	 */
+	public void write(DataOutputStream output) throws IOException {
+		if (!OVERRIDES_SERIALIZE.get(getClass())) {
+			throw new UnsupportedOperationException(getClass().getName() + " overrides neither write nor serializePacket");
+		}
+		output.write(serializePacket());
+	}
+
+	public byte[] serializePacket() throws IOException {
+		if (!OVERRIDES_WRITE.get(getClass())) {
+			throw new UnsupportedOperationException(getClass().getName() + " overrides neither write nor serializePacket");
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		write(new DataOutputStream(buffer));
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * The id this packet is sent with in its state.
+	 */
+	public int getPacketId() {
+		int packetId = getRegistration(getClass()).getPacketId();
+		if (packetId < 0) {
+			throw new IllegalStateException("This packet is not registered!");
+		}
+		return packetId;
+	}
 
 }
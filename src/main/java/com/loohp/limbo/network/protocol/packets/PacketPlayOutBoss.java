@@ -24,7 +24,6 @@ import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.bossbar.BossBar;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -71,11 +70,8 @@ public class PacketPlayOutBoss extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
-        output.writeByte(Packet.getPlayOut().get(getClass()));
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(getPacketId());
 
         DataTypeIO.writeUUID(output, bossBar.getUniqueId());
         DataTypeIO.writeVarInt(output, action.ordinal());
@@ -111,7 +107,5 @@ public class PacketPlayOutBoss extends PacketOut {
                 break;
             }
         }
-
-        return buffer.toByteArray();
     }
 }
@@ -21,7 +21,6 @@ package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -38,17 +37,12 @@ public class PacketPlayOutEntityDestroy extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeVarInt(output, entityIds.length);
 		for (int entityId : entityIds) {
 			DataTypeIO.writeVarInt(output, entityId);
 		}
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -29,7 +29,6 @@ import com.loohp.limbo.world.BlockPosition;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -65,11 +64,8 @@ public class PacketPlayOutEntityMetadata extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeVarInt(output, entity.getEntityId());
 		Collection<WatchableObject> watches;
 		if (allFields) {
@@ -168,8 +164,6 @@ public class PacketPlayOutEntityMetadata extends PacketOut {
 			}
 		}
 		output.writeByte(END_OFF_METADATA);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -25,7 +25,6 @@ import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.World;
 import net.kyori.adventure.key.Key;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -134,11 +133,8 @@ public class PacketPlayOutLogin extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		output.writeInt(entityId);
 		output.writeBoolean(isHardcore);
 		DataTypeIO.writeVarInt(output, worlds.size());
@@ -160,8 +156,6 @@ public class PacketPlayOutLogin extends PacketOut {
 		output.writeBoolean(isFlat);
 		output.writeBoolean(false);
 		DataTypeIO.writeVarInt(output, portalCooldown);
-
-		return buffer.toByteArray();
 	}
 
 }
@@ -23,7 +23,6 @@ import com.loohp.limbo.sounds.SoundEffect;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.sound.Sound;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -84,11 +83,8 @@ public class PacketPlayOutNamedSoundEffect extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
-        output.writeByte(Packet.getPlayOut().get(getClass()));
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(getPacketId());
 
         DataTypeIO.writeVarInt(output, 0);
         DataTypeIO.writeString(output, sound.getSound().toString(), StandardCharsets.UTF_8);
@@ -106,7 +102,5 @@ public class PacketPlayOutNamedSoundEffect extends PacketOut {
         output.writeFloat(volume);
         output.writeFloat(pitch);
         output.writeLong(seed);
-
-        return buffer.toByteArray();
     }
 }
@@ -19,7 +19,6 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -65,11 +64,8 @@ public class PacketPlayOutPlayerAbilities extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		byte value = 0;
 		for (PlayerAbilityFlags flag : flags) {
 			value = (byte) (value | flag.getValue());
@@ -78,8 +74,6 @@ public class PacketPlayOutPlayerAbilities extends PacketOut {
 		output.writeByte(value);
 		output.writeFloat(flySpeed);
 		output.writeFloat(fieldOfField);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -23,7 +23,6 @@ import com.loohp.limbo.network.protocol.packets.PacketPlayOutPlayerInfo.PlayerIn
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.GameMode;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -65,11 +64,8 @@ public class PacketPlayOutPlayerInfo extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 
 		DataTypeIO.writeEnumSet(output, actions, PlayerInfoAction.class);
 		DataTypeIO.writeVarInt(output, 1);
@@ -117,8 +113,6 @@ public class PacketPlayOutPlayerInfo extends PacketOut {
 				}
 			}
 		}
-		
-		return buffer.toByteArray();
 	}
 
 	// =========
@@ -21,7 +21,6 @@ package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
@@ -95,11 +94,8 @@ public class PacketPlayOutPositionAndLook extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		output.writeDouble(x);
 		output.writeDouble(y);
 		output.writeDouble(z);
@@ -113,8 +109,6 @@ public class PacketPlayOutPositionAndLook extends PacketOut {
 		
 		output.writeByte(flag);
 		DataTypeIO.writeVarInt(output, teleportId);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -23,7 +23,6 @@ import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -73,11 +72,8 @@ public class PacketPlayOutResourcePackSend extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeString(output, url, StandardCharsets.UTF_8);
 		DataTypeIO.writeString(output, hash, StandardCharsets.UTF_8);
 		output.writeBoolean(isForced);
@@ -85,7 +81,6 @@ public class PacketPlayOutResourcePackSend extends PacketOut {
 		if (hasPromptMessage) {
 			DataTypeIO.writeString(output, GsonComponentSerializer.gson().serialize(promptMessage), StandardCharsets.UTF_8);
 		}
-		return buffer.toByteArray();
 	}
 
 }
@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.inventory.ItemStack;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
@@ -58,17 +57,12 @@ public class PacketPlayOutSetSlot extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
-        output.writeByte(Packet.getPlayOut().get(getClass()));
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(getPacketId());
 
         output.writeByte(containerId);
         DataTypeIO.writeVarInt(output, stateId);
         output.writeShort(slot);
         DataTypeIO.writeItemStack(output, itemStack);
-
-        return buffer.toByteArray();
     }
 }
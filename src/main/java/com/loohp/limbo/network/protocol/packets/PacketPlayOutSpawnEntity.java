@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.entity.EntityType;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.UUID;
@@ -112,11 +111,8 @@ public class PacketPlayOutSpawnEntity extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeVarInt(output, entityId);
 		DataTypeIO.writeUUID(output, uuid);
 		DataTypeIO.writeVarInt(output, type.getTypeId());
@@ -130,8 +126,6 @@ public class PacketPlayOutSpawnEntity extends PacketOut {
 		output.writeShort(velocityX * 8000);
 		output.writeShort(velocityY * 8000);
 		output.writeShort(velocityZ * 8000);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.world.BlockPosition;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -44,15 +43,10 @@ public class PacketPlayOutSpawnPosition extends PacketOut {
 		return angle;
 	}
 	
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeBlockPosition(output, position);
 		output.writeFloat(angle);
-		
-		return buffer.toByteArray();
 	}
 
 }
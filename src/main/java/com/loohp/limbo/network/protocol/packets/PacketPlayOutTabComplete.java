@@ -23,7 +23,6 @@ import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -60,11 +59,8 @@ public class PacketPlayOutTabComplete extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
-		output.writeByte(Packet.getPlayOut().get(getClass()));
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(getPacketId());
 		DataTypeIO.writeVarInt(output, id);
 		DataTypeIO.writeVarInt(output, start);
 		DataTypeIO.writeVarInt(output, length);
@@ -79,8 +75,6 @@ public class PacketPlayOutTabComplete extends PacketOut {
 				output.writeBoolean(false);
 			}
 		}
-		
-		return buffer.toByteArray();
 	}
 
 	public static class TabCompleteMatches {
@@ -22,7 +22,6 @@ package com.loohp.limbo.network.protocol.packets;
 import com.loohp.limbo.inventory.ItemStack;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
@@ -58,11 +57,8 @@ public class PacketPlayOutWindowItems extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
-        output.writeByte(Packet.getPlayOut().get(getClass()));
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(getPacketId());
 
         output.writeByte(containerId);
         DataTypeIO.writeVarInt(output, stateId);
@@ -71,7 +67,5 @@ public class PacketPlayOutWindowItems extends PacketOut {
             DataTypeIO.writeItemStack(output, itemStack);
         }
         DataTypeIO.writeItemStack(output, carriedItem);
-
-        return buffer.toByteArray();
     }
 }
@@ -23,13 +23,17 @@ import com.loohp.limbo.Console;
 import com.loohp.limbo.commands.CommandSender;
 import com.loohp.limbo.file.FileConfiguration;
 import com.loohp.limbo.player.Player;
+import com.loohp.limbo.utils.DeclareCommands;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class PermissionsManager {
 	
@@ -61,6 +65,7 @@ public class PermissionsManager {
 				users.put(key, groups);
 			}
 		} catch (Exception e) {}
+		DeclareCommands.invalidate();
 	}
 	
 	public boolean hasPermission(CommandSender sender, String permission) {
@@ -77,6 +82,30 @@ public class PermissionsManager {
 		return false;
 	}
 
+	/**
+	 * Returns the lower case nodes of every group the player belongs to, including the default group.
+	 */
+	public Set<String> getEffectivePermissions(Player player) {
+		Set<String> nodes = new HashSet<>();
+		List<String> groups = users.get(player.getName());
+		if (groups != null) {
+			for (String group : groups) {
+				addNodes(nodes, group);
+			}
+		}
+		addNodes(nodes, "default");
+		return nodes;
+	}
+	
+	private void addNodes(Set<String> nodes, String group) {
+		List<String> groupNodes = permissions.get(group);
+		if (groupNodes != null) {
+			for (String node : groupNodes) {
+				nodes.add(node.toLowerCase(Locale.ROOT));
+			}
+		}
+	}
+
 	public Map<String, List<String>> getUsers() {
 		return users;
 	}
@@ -148,6 +148,13 @@ public class Player extends LivingEntity implements CommandSender, InventoryHold
 		return gamemode;
 	}
 
+	/**
+	 * Returns the keep-alive round trip time in milliseconds.
+	 */
+	public int getPing() {
+		return clientConnection.getPing();
+	}
+
 	public void setGamemode(GameMode gamemode) {
 		if (!this.gamemode.equals(gamemode)) {
 			try {
@@ -337,15 +344,14 @@ public class Player extends LivingEntity implements CommandSender, InventoryHold
 				if (hasPermission("limboserver.chat")) {
 					String chat = event.getFormat().replace("%name%", username).replace("%message%", event.getMessage());
 					Limbo.getInstance().getConsole().sendMessage(chat);
+					//chat and system messages are both sent as system chat, so every recipient gets the same bytes
+					Component component;
 					if (event.getFormat().equals(CHAT_DEFAULT_FORMAT)) {
-						for (Player each : Limbo.getInstance().getPlayers()) {
-							each.sendMessage(Identity.identity(uuid), Component.translatable("chat.type.text").args(Component.text(this.getName()), Component.text(event.getMessage())), MessageType.CHAT, saltSignature, time);
-						}
+						component = Component.translatable("chat.type.text").args(Component.text(this.getName()), Component.text(event.getMessage()));
 					} else {
-						for (Player each : Limbo.getInstance().getPlayers()) {
-							each.sendMessage(Identity.identity(uuid), Component.text(chat), MessageType.SYSTEM, saltSignature, time);
-						}
+						component = Component.text(chat);
 					}
+					Limbo.getInstance().broadcastPacket(new ClientboundSystemChatPacket(component, false));
 				} else if (verbose) {
 					sendMessage(ChatColor.RED + "You do not have permission to chat!");
 				}
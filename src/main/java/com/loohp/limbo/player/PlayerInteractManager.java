@@ -26,36 +26,65 @@ import com.loohp.limbo.network.ClientConnection;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchFinishedPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchStartPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
+import com.loohp.limbo.network.protocol.packets.Packet;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityDestroy;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityMetadata;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutSpawnEntity;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutUnloadChunk;
+import com.loohp.limbo.network.protocol.packets.ServerboundChunkBatchReceivedPacket;
 import com.loohp.limbo.world.ChunkPosition;
 import com.loohp.limbo.world.World;
 import net.querz.mca.Chunk;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 public class PlayerInteractManager {
+
+	//clients only acknowledge a single batch until they have measured their first one
+	private static final int INITIAL_UNACKNOWLEDGED_BATCHES = 1;
+	private static final int MAX_UNACKNOWLEDGED_BATCHES = 10;
 	
 	private Player player;
 	
 	private Set<Entity> entities;
 	private Map<ChunkPosition, Chunk> currentViewing;
+	private final ReentrantLock updateLock;
+
+	private final Set<ChunkPosition> pendingChunks;
+	private final Set<ChunkPosition> sentChunks;
+	private final List<ChunkPosition> pendingUnloads;
+	private final AtomicBoolean sending;
+	private int centerChunkX;
+	private int centerChunkZ;
+	private int sentThisTick;
+	private int unacknowledgedBatches;
+	private int maxUnacknowledgedBatches;
+	private float desiredChunksPerTick;
 	
 	public PlayerInteractManager() {
 		this.player = null;
 		this.entities = new HashSet<>();
 		this.currentViewing = new HashMap<>();
+		this.updateLock = new ReentrantLock();
+		this.pendingChunks = new HashSet<>();
+		this.sentChunks = new HashSet<>();
+		this.pendingUnloads = new ArrayList<>();
+		this.sending = new AtomicBoolean(false);
+		this.sentThisTick = 0;
+		this.unacknowledgedBatches = 0;
+		this.maxUnacknowledgedBatches = INITIAL_UNACKNOWLEDGED_BATCHES;
+		this.desiredChunksPerTick = Float.NaN;
 	}
 	
 	protected void setPlayer(Player player) {
@@ -75,6 +104,18 @@ public class PlayerInteractManager {
 			return;
 		}
 
+		//called from both the tick thread and the player's session thread
+		updateLock.lock();
+		try {
+			update0();
+		} finally {
+			updateLock.unlock();
+		}
+		scheduleChunkSending();
+	}
+
+	private void update0() throws IOException {
+
 		int viewDistanceChunks = Limbo.getInstance().getServerProperties().getViewDistance();
 		int viewDistanceBlocks = viewDistanceChunks << 4;
 		Location location = player.getLocation();
@@ -82,10 +123,10 @@ public class PlayerInteractManager {
 		for (Entity entity : entitiesInRange) {
 			if (!entities.contains(entity)) {
 				PacketPlayOutSpawnEntity packet = new PacketPlayOutSpawnEntity(entity.getEntityId(), entity.getUniqueId(), entity.getType(), entity.getX(), entity.getY(), entity.getZ(), entity.getYaw(), entity.getPitch(), entity.getPitch(), 0, (short) 0, (short) 0, (short) 0);
-				player.clientConnection.sendPacket(packet);
+				player.clientConnection.sendPacket(packet, false);
 
 				PacketPlayOutEntityMetadata meta = new PacketPlayOutEntityMetadata(entity);
-				player.clientConnection.sendPacket(meta);
+				player.clientConnection.sendPacket(meta, false);
 			}
 		}
 		List<Integer> ids = new ArrayList<>();
@@ -96,7 +137,7 @@ public class PlayerInteractManager {
 		}
 		for (int id : ids) {
 			PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(id);
-			player.clientConnection.sendPacket(packet);
+			player.clientConnection.sendPacket(packet, false);
 		}
 		
 		entities = entitiesInRange;
@@ -117,47 +158,126 @@ public class PlayerInteractManager {
 				}
 			}
 		}
-		
-		for (Entry<ChunkPosition, Chunk> entry : currentViewing.entrySet()) {
-			ChunkPosition chunkPos = entry.getKey();
-			if (!chunksInRange.containsKey(chunkPos)) {
-				PacketPlayOutUnloadChunk packet = new PacketPlayOutUnloadChunk(chunkPos.getChunkX(), chunkPos.getChunkZ());
-				player.clientConnection.sendPacket(packet);
+
+		//only the view delta is worked out here, the chunks themselves are sent by the chunk executor
+		synchronized (pendingChunks) {
+			for (ChunkPosition chunkPos : currentViewing.keySet()) {
+				if (!chunksInRange.containsKey(chunkPos)) {
+					pendingChunks.remove(chunkPos);
+					if (sentChunks.remove(chunkPos)) {
+						pendingUnloads.add(chunkPos);
+					}
+				}
+			}
+			for (ChunkPosition chunkPos : chunksInRange.keySet()) {
+				if (!currentViewing.containsKey(chunkPos)) {
+					pendingChunks.add(chunkPos);
+				}
+			}
+			centerChunkX = playerChunkX;
+			centerChunkZ = playerChunkZ;
+			sentThisTick = 0;
+		}
+
+		currentViewing = chunksInRange;
+	}
+
+	/**
+	 * Called when the client acknowledges a chunk batch, which allows the next batches to be sent.
+	 */
+	public void onChunkBatchReceived(float desiredChunksPerTick) {
+		synchronized (pendingChunks) {
+			unacknowledgedBatches = Math.max(0, unacknowledgedBatches - 1);
+			maxUnacknowledgedBatches = MAX_UNACKNOWLEDGED_BATCHES;
+			if (!Float.isNaN(desiredChunksPerTick) && desiredChunksPerTick > 0) {
+				this.desiredChunksPerTick = desiredChunksPerTick;
+			}
+		}
+		scheduleChunkSending();
+	}
+
+	private void scheduleChunkSending() {
+		if (hasChunksToSend() && sending.compareAndSet(false, true)) {
+			Limbo.getInstance().getServerConnection().getChunkExecutor().execute(this::sendChunks);
+		}
+	}
+
+	private boolean hasChunksToSend() {
+		synchronized (pendingChunks) {
+			return !pendingUnloads.isEmpty() || (!pendingChunks.isEmpty() && getChunkBudget() > 0 && unacknowledgedBatches < maxUnacknowledgedBatches);
+		}
+	}
+
+	private int getChunkBudget() {
+		int budget = Limbo.getInstance().getServerProperties().getChunksPerTick();
+		if (!Float.isNaN(desiredChunksPerTick)) {
+			budget = Math.min(budget, Math.max(1, (int) Math.ceil(desiredChunksPerTick)));
+		}
+		return budget - sentThisTick;
+	}
+
+	private void sendChunks() {
+		try {
+			sendChunks0();
+		} catch (IOException e) {
+			synchronized (pendingChunks) {
+				pendingChunks.clear();
+				pendingUnloads.clear();
 			}
+		} finally {
+			sending.set(false);
+		}
+		if (player.clientConnection.getClientState() != ClientConnection.ClientState.DISCONNECTED) {
+			scheduleChunkSending();
 		}
+	}
 
-		int counter = 0;
+	private void sendChunks0() throws IOException {
+		List<ChunkPosition> unloads;
+		List<ChunkPosition> batch = new ArrayList<>();
+		synchronized (pendingChunks) {
+			unloads = new ArrayList<>(pendingUnloads);
+			pendingUnloads.clear();
+			int budget = getChunkBudget();
+			if (budget > 0 && unacknowledgedBatches < maxUnacknowledgedBatches && !pendingChunks.isEmpty()) {
+				int centerX = centerChunkX;
+				int centerZ = centerChunkZ;
+				List<ChunkPosition> nearest = new ArrayList<>(pendingChunks);
+				nearest.sort(Comparator.comparingInt(each -> {
+					int dx = each.getChunkX() - centerX;
+					int dz = each.getChunkZ() - centerZ;
+					return dx * dx + dz * dz;
+				}));
+				Iterator<ChunkPosition> itr = nearest.iterator();
+				while (itr.hasNext() && batch.size() < budget) {
+					ChunkPosition chunkPos = itr.next();
+					batch.add(chunkPos);
+					pendingChunks.remove(chunkPos);
+					sentChunks.add(chunkPos);
+				}
+				sentThisTick += batch.size();
+				if (Packet.getPlayIn().containsValue(ServerboundChunkBatchReceivedPacket.class)) {
+					unacknowledgedBatches++;
+				}
+			}
+		}
+
+		for (ChunkPosition chunkPos : unloads) {
+			PacketPlayOutUnloadChunk packet = new PacketPlayOutUnloadChunk(chunkPos.getChunkX(), chunkPos.getChunkZ());
+			player.clientConnection.sendPacket(packet, false);
+		}
+		if (batch.isEmpty()) {
+			player.clientConnection.flush();
+			return;
+		}
 		ClientboundChunkBatchStartPacket chunkBatchStartPacket = new ClientboundChunkBatchStartPacket();
-		player.clientConnection.sendPacket(chunkBatchStartPacket);
-		for (Entry<ChunkPosition, Chunk> entry : chunksInRange.entrySet()) {
-			ChunkPosition chunkPos = entry.getKey();
-			if (!currentViewing.containsKey(chunkPos)) {
-				Chunk chunk = chunkPos.getWorld().getChunkAt(chunkPos.getChunkX(), chunkPos.getChunkZ());
-				if (chunk == null) {
-					ClientboundLevelChunkWithLightPacket chunkdata = new ClientboundLevelChunkWithLightPacket(chunkPos.getChunkX(), chunkPos.getChunkZ(), entry.getValue(), world.getEnvironment(), Collections.emptyList(), Collections.emptyList());
-					player.clientConnection.sendPacket(chunkdata);
-                } else {
-					List<Byte[]> blockChunk = world.getLightEngineBlock().getBlockLightBitMask(chunkPos.getChunkX(), chunkPos.getChunkZ());
-					if (blockChunk == null) {
-						blockChunk = new ArrayList<>();
-					}
-					List<Byte[]> skyChunk = null;
-					if (world.hasSkyLight()) {
-						skyChunk = world.getLightEngineSky().getSkyLightBitMask(chunkPos.getChunkX(), chunkPos.getChunkZ());
-					}
-					if (skyChunk == null) {
-						skyChunk = new ArrayList<>();
-					}
-					ClientboundLevelChunkWithLightPacket chunkdata = new ClientboundLevelChunkWithLightPacket(chunkPos.getChunkX(), chunkPos.getChunkZ(), chunk, world.getEnvironment(), skyChunk, blockChunk);
-					player.clientConnection.sendPacket(chunkdata);
-                }
-                counter++;
-            }
+		player.clientConnection.sendPacket(chunkBatchStartPacket, false);
+		for (ChunkPosition chunkPos : batch) {
+			ClientboundLevelChunkWithLightPacket chunkdata = chunkPos.getWorld().getChunkPacket(chunkPos.getChunkX(), chunkPos.getChunkZ());
+			player.clientConnection.sendPacket(chunkdata, false);
 		}
-		ClientboundChunkBatchFinishedPacket chunkBatchFinishedPacket = new ClientboundChunkBatchFinishedPacket(counter);
+		ClientboundChunkBatchFinishedPacket chunkBatchFinishedPacket = new ClientboundChunkBatchFinishedPacket(batch.size());
 		player.clientConnection.sendPacket(chunkBatchFinishedPacket);
-
-		currentViewing = chunksInRange;
 	}
 
 }
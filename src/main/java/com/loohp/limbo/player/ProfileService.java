@@ -0,0 +1,353 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.player;
+
+import com.loohp.limbo.Limbo;
+import com.loohp.limbo.utils.MojangAPIUtils.SkinResponse;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves player profiles and skins from the Mojang api without blocking the caller.
+ * Results are kept in a bounded LRU cache with a time to live, which is also saved to disk,
+ * and concurrent lookups of the same profile share a single request.
+ */
+public class ProfileService {
+
+	public static final String PROFILE_URL = "https://api.mojang.com/users/profiles/minecraft/";
+	public static final String SESSION_URL = "https://sessionserver.mojang.com/session/minecraft/profile/";
+	public static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(6);
+	public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	private static final int TIMEOUT = 5000;
+	private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]{1,16}");
+
+	private final File cacheFile;
+	private final String profileUrl;
+	private final String sessionUrl;
+	private final long ttl;
+	private final Executor executor;
+	private final Map<String, CacheEntry> cache;
+	private final Map<String, CompletableFuture<Profile>> pending;
+	private final AtomicBoolean saveScheduled;
+
+	public ProfileService(File cacheFile, Executor executor) {
+		this(cacheFile, PROFILE_URL, SESSION_URL, DEFAULT_TTL, DEFAULT_MAX_ENTRIES, executor);
+	}
+
+	public ProfileService(File cacheFile, String profileUrl, String sessionUrl, long ttl, int maxEntries, Executor executor) {
+		this.cacheFile = cacheFile;
+		this.profileUrl = profileUrl;
+		this.sessionUrl = sessionUrl;
+		this.ttl = ttl;
+		this.executor = executor;
+		//every profile is cached under its name and its uuid
+		int maxKeys = maxEntries * 2;
+		this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maxKeys;
+			}
+		};
+		this.pending = new ConcurrentHashMap<>();
+		this.saveScheduled = new AtomicBoolean(false);
+		load();
+	}
+
+	/**
+	 * Looks up a profile with its skin by player name, completes with null if there is no such premium account or the lookup failed.
+	 */
+	public CompletableFuture<Profile> getProfile(String name) {
+		//offline names may contain anything, they are never sent to the api
+		if (!VALID_NAME.matcher(name).matches()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return lookup("name:" + name.toLowerCase(Locale.ROOT), () -> {
+			JSONObject json = request(profileUrl + name);
+			if (json == null) {
+				return null;
+			}
+			return fetchSession(parseUUID((String) json.get("id")));
+		});
+	}
+
+	/**
+	 * Looks up a profile with its skin by uuid, completes with null if there is no such premium account or the lookup failed.
+	 */
+	public CompletableFuture<Profile> getProfile(UUID uuid) {
+		return lookup("uuid:" + uuid, () -> fetchSession(uuid));
+	}
+
+	public CompletableFuture<SkinResponse> getSkin(String name) {
+		return getProfile(name).thenApply(profile -> profile == null ? null : profile.getSkin());
+	}
+
+	public CompletableFuture<SkinResponse> getSkin(UUID uuid) {
+		return getProfile(uuid).thenApply(profile -> profile == null ? null : profile.getSkin());
+	}
+
+	private CompletableFuture<Profile> lookup(String key, Fetcher fetcher) {
+		synchronized (cache) {
+			CacheEntry entry = cache.get(key);
+			if (entry != null) {
+				if (entry.expiry > System.currentTimeMillis()) {
+					return CompletableFuture.completedFuture(entry.profile);
+				}
+				cache.remove(key);
+			}
+		}
+		CompletableFuture<Profile> future = new CompletableFuture<>();
+		CompletableFuture<Profile> existing = pending.putIfAbsent(key, future);
+		if (existing != null) {
+			return existing;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					Profile profile = fetcher.fetch();
+					long expiry = System.currentTimeMillis() + ttl;
+					synchronized (cache) {
+						cache.put(key, new CacheEntry(profile, expiry));
+						if (profile != null) {
+							cache.put("name:" + profile.getName().toLowerCase(Locale.ROOT), new CacheEntry(profile, expiry));
+							cache.put("uuid:" + profile.getUniqueId(), new CacheEntry(profile, expiry));
+						}
+					}
+					if (profile != null) {
+						scheduleSave();
+					}
+					future.complete(profile);
+				} catch (Throwable e) {
+					//failures are not cached, the next lookup tries again
+					log("Unable to look up profile " + key.substring(key.indexOf(':') + 1) + ": " + e.getLocalizedMessage());
+					future.complete(null);
+				} finally {
+					pending.remove(key, future);
+				}
+			});
+		} catch (Throwable e) {
+			pending.remove(key, future);
+			future.complete(null);
+		}
+		return future;
+	}
+
+	private Profile fetchSession(UUID uuid) throws IOException, ParseException {
+		JSONObject json = request(sessionUrl + uuid + "?unsigned=false");
+		if (json == null) {
+			return null;
+		}
+		SkinResponse skin = null;
+		JSONArray properties = (JSONArray) json.get("properties");
+		if (properties != null) {
+			for (Object obj : properties) {
+				JSONObject property = (JSONObject) obj;
+				if ("textures".equals(property.get("name"))) {
+					skin = new SkinResponse((String) property.get("value"), (String) property.get("signature"));
+				}
+			}
+		}
+		return new Profile(parseUUID((String) json.get("id")), (String) json.get("name"), skin);
+	}
+
+	/**
+	 * Returns the parsed response, or null if the server has no such profile.
+	 */
+	private JSONObject request(String url) throws IOException, ParseException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setUseCaches(false);
+		connection.addRequestProperty("User-Agent", "Limbo");
+		try {
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NO_CONTENT || code == HttpURLConnection.HTTP_NOT_FOUND) {
+				return null;
+			}
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Response code " + code + ", " + connection.getResponseMessage());
+			}
+			try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+				Object json = new JSONParser().parse(reader);
+				return json instanceof JSONObject ? (JSONObject) json : null;
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static UUID parseUUID(String id) {
+		return UUID.fromString(id.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]+)", "$1-$2-$3-$4-$5"));
+	}
+
+	private void scheduleSave() {
+		if (cacheFile != null && saveScheduled.compareAndSet(false, true)) {
+			executor.execute(() -> {
+				saveScheduled.set(false);
+				save();
+			});
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void load() {
+		if (cacheFile == null || !cacheFile.exists()) {
+			return;
+		}
+		try (InputStream in = Files.newInputStream(cacheFile.toPath())) {
+			JSONArray array = (JSONArray) new JSONParser().parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+			long now = System.currentTimeMillis();
+			synchronized (cache) {
+				for (Object obj : array) {
+					JSONObject json = (JSONObject) obj;
+					long expiry = ((Number) json.get("expiry")).longValue();
+					if (expiry <= now) {
+						continue;
+					}
+					String skin = (String) json.get("skin");
+					Profile profile = new Profile(UUID.fromString((String) json.get("uuid")), (String) json.get("name"), skin == null ? null : new SkinResponse(skin, (String) json.get("signature")));
+					cache.put("name:" + profile.getName().toLowerCase(Locale.ROOT), new CacheEntry(profile, expiry));
+					cache.put("uuid:" + profile.getUniqueId(), new CacheEntry(profile, expiry));
+				}
+			}
+		} catch (Exception e) {
+			log("Unable to load the profile cache: " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Writes the cached profiles to the cache file.
+	 */
+	@SuppressWarnings("unchecked")
+	public void save() {
+		if (cacheFile == null) {
+			return;
+		}
+		JSONArray array = new JSONArray();
+		synchronized (cache) {
+			for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
+				Profile profile = entry.getValue().profile;
+				if (profile == null || !entry.getKey().startsWith("uuid:")) {
+					continue;
+				}
+				JSONObject json = new JSONObject();
+				json.put("uuid", profile.getUniqueId().toString());
+				json.put("name", profile.getName());
+				if (profile.getSkin() != null) {
+					json.put("skin", profile.getSkin().getSkin());
+					json.put("signature", profile.getSkin().getSignature());
+				}
+				json.put("expiry", entry.getValue().expiry);
+				array.add(json);
+			}
+		}
+		try {
+			File temp = new File(cacheFile.getPath() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				array.writeJSONString(writer);
+			}
+			Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			log("Unable to save the profile cache: " + e.getLocalizedMessage());
+		}
+	}
+
+	private static void log(String message) {
+		Limbo.getInstance().getConsole().sendMessage(message);
+	}
+
+	public void invalidate(UUID uuid) {
+		synchronized (cache) {
+			CacheEntry entry = cache.remove("uuid:" + uuid);
+			if (entry != null && entry.profile != null) {
+				cache.remove("name:" + entry.profile.getName().toLowerCase(Locale.ROOT));
+			}
+		}
+	}
+
+	private interface Fetcher {
+
+		Profile fetch() throws Exception;
+
+	}
+
+	private static class CacheEntry {
+
+		private final Profile profile;
+		private final long expiry;
+
+		private CacheEntry(Profile profile, long expiry) {
+			this.profile = profile;
+			this.expiry = expiry;
+		}
+
+	}
+
+	public static class Profile {
+
+		private final UUID uuid;
+		private final String name;
+		private final SkinResponse skin;
+
+		public Profile(UUID uuid, String name, SkinResponse skin) {
+			this.uuid = uuid;
+			this.name = name;
+			this.skin = skin;
+		}
+
+		public UUID getUniqueId() {
+			return uuid;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public SkinResponse getSkin() {
+			return skin;
+		}
+
+	}
+
+}
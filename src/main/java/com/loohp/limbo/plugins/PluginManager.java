@@ -25,16 +25,25 @@ import com.loohp.limbo.commands.CommandSender;
 import com.loohp.limbo.commands.DefaultCommands;
 import com.loohp.limbo.commands.TabCompletor;
 import com.loohp.limbo.file.FileConfiguration;
+import com.loohp.limbo.utils.DeclareCommands;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -43,12 +52,14 @@ public class PluginManager {
 	private Map<String, LimboPlugin> plugins;
 	private DefaultCommands defaultExecutor;
 	private List<Executor> executors;
+	private volatile CommandIndex commandIndex;
 	private File pluginFolder;
 
 	public PluginManager(DefaultCommands defaultExecutor, File pluginFolder) {
 		this.defaultExecutor = defaultExecutor;
 		this.pluginFolder = pluginFolder;
 		this.executors = new ArrayList<>();
+		this.commandIndex = new CommandIndex(defaultExecutor, executors);
 		this.plugins = new LinkedHashMap<>();
 	}
 	
@@ -105,17 +116,18 @@ public class PluginManager {
 
 	public void fireExecutors(CommandSender sender, String[] args) throws Exception {
 		Limbo.getInstance().getConsole().sendMessage(sender.getName() + " executed server command: /" + String.join(" ", args));
-		try {
-			defaultExecutor.execute(sender, args);
-		} catch (Exception e) {
-			System.err.println("Error while running default command \"" + args[0] + "\"");
-			e.printStackTrace();
+		if (args.length == 0) {
+			return;
 		}
-		for (Executor entry : executors) {
+		for (Executor entry : commandIndex.getExecutors(args[0])) {
 			try {
 				entry.executor.execute(sender, args);
 			} catch (Exception e) {
-				System.err.println("Error while passing command \"" + args[0] + "\" to the plugin \"" + entry.plugin.getName() + "\"");
+				if (entry.plugin == null) {
+					System.err.println("Error while running default command \"" + args[0] + "\"");
+				} else {
+					System.err.println("Error while passing command \"" + args[0] + "\" to the plugin \"" + entry.plugin.getName() + "\"");
+				}
 				e.printStackTrace();
 			}
 		}
@@ -123,18 +135,16 @@ public class PluginManager {
 
 	public List<String> getTabOptions(CommandSender sender, String[] args) {
 		List<String> options = new ArrayList<>();
-		try {
-			options.addAll(defaultExecutor.tabComplete(sender, args));
-		} catch (Exception e) {
-			System.err.println("Error while getting default command tab completions");
-			e.printStackTrace();
-		}
-		for (Executor entry : executors) {
+		for (Executor entry : commandIndex.getTabExecutors(args)) {
 			if (entry.tab.isPresent()) {
 				try {
 					options.addAll(entry.tab.get().tabComplete(sender, args));
 				} catch (Exception e) {
-					System.err.println("Error while getting tab completions to the plugin \"" + entry.plugin.getName() + "\"");
+					if (entry.plugin == null) {
+						System.err.println("Error while getting default command tab completions");
+					} else {
+						System.err.println("Error while getting tab completions to the plugin \"" + entry.plugin.getName() + "\"");
+					}
 					e.printStackTrace();
 				}
 			}
@@ -142,12 +152,43 @@ public class PluginManager {
 		return options;
 	}
 
-	public void registerCommands(LimboPlugin plugin, CommandExecutor executor) {
-		executors.add(new Executor(plugin, executor));
+	/**
+	 * Whether any executor was registered without labels, such executors receive every command and every tab completion.
+	 */
+	public boolean hasCatchAllExecutors() {
+		return !commandIndex.global.isEmpty();
+	}
+
+	/**
+	 * Registers an executor which receives every command, prefer {@link #registerCommand(LimboPlugin, CommandExecutor, String, String...)}.
+	 */
+	public synchronized void registerCommands(LimboPlugin plugin, CommandExecutor executor) {
+		executors.add(new Executor(plugin, executor, Collections.emptySet()));
+		rebuildCommandIndex();
+	}
+
+	/**
+	 * Registers an executor which only receives commands with the given label or one of its aliases.
+	 */
+	public synchronized void registerCommand(LimboPlugin plugin, CommandExecutor executor, String label, String... aliases) {
+		Set<String> labels = new LinkedHashSet<>();
+		labels.add(label.toLowerCase(Locale.ROOT));
+		for (String alias : aliases) {
+			labels.add(alias.toLowerCase(Locale.ROOT));
+		}
+		executors.add(new Executor(plugin, executor, labels));
+		rebuildCommandIndex();
+	}
+
+	public synchronized void unregsiterAllCommands(LimboPlugin plugin) {
+		if (executors.removeIf(each -> each.plugin.equals(plugin))) {
+			rebuildCommandIndex();
+		}
 	}
 
-	public void unregsiterAllCommands(LimboPlugin plugin) {
-		executors.removeIf(each -> each.plugin.equals(plugin));
+	private synchronized void rebuildCommandIndex() {
+		commandIndex = new CommandIndex(defaultExecutor, executors);
+		DeclareCommands.invalidate();
 	}
 	
 	public File getPluginFolder() {
@@ -158,10 +199,16 @@ public class PluginManager {
 		public LimboPlugin plugin;
 		public CommandExecutor executor;
 		public Optional<TabCompletor> tab;
+		public Set<String> labels;
 
 		public Executor(LimboPlugin plugin, CommandExecutor executor) {
+			this(plugin, executor, Collections.emptySet());
+		}
+
+		public Executor(LimboPlugin plugin, CommandExecutor executor, Set<String> labels) {
 			this.plugin = plugin;
 			this.executor = executor;
+			this.labels = labels;
 			if (executor instanceof TabCompletor) {
 				this.tab = Optional.of((TabCompletor) executor);
 			} else {
@@ -170,4 +217,66 @@ public class PluginManager {
 		}
 	}
 
+	/**
+	 * An immutable snapshot of the registered executors, indexed by lower case label.
+	 * Executors registered without labels receive every command.
+	 */
+	private static class CommandIndex {
+
+		private final List<Executor> all;
+		private final List<Executor> global;
+		private final Map<String, List<Executor>> byLabel;
+		private final NavigableSet<String> labels;
+
+		private CommandIndex(DefaultCommands defaultExecutor, List<Executor> executors) {
+			this.all = new ArrayList<>();
+			all.add(new Executor(null, defaultExecutor, new LinkedHashSet<>(DefaultCommands.LABELS)));
+			all.addAll(executors);
+			this.global = new ArrayList<>();
+			this.labels = new TreeSet<>();
+			for (Executor executor : all) {
+				if (executor.labels.isEmpty()) {
+					global.add(executor);
+				}
+				labels.addAll(executor.labels);
+			}
+			this.byLabel = new HashMap<>();
+			for (String label : labels) {
+				//kept in registration order, catch-all executors included
+				List<Executor> list = new ArrayList<>();
+				for (Executor executor : all) {
+					if (executor.labels.isEmpty() || executor.labels.contains(label)) {
+						list.add(executor);
+					}
+				}
+				byLabel.put(label, list);
+			}
+		}
+
+		private List<Executor> getExecutors(String label) {
+			return byLabel.getOrDefault(label.toLowerCase(Locale.ROOT), global);
+		}
+
+		private List<Executor> getTabExecutors(String[] args) {
+			if (args.length == 0) {
+				return all;
+			} else if (args.length > 1) {
+				return getExecutors(args[0]);
+			}
+			String prefix = args[0].toLowerCase(Locale.ROOT);
+			Set<Executor> matches = new HashSet<>(global);
+			for (String label : labels.subSet(prefix, true, prefix + Character.MAX_VALUE, true)) {
+				matches.addAll(byLabel.get(label));
+			}
+			List<Executor> list = new ArrayList<>();
+			for (Executor executor : all) {
+				if (matches.contains(executor)) {
+					list.add(executor);
+				}
+			}
+			return list;
+		}
+
+	}
+
 }
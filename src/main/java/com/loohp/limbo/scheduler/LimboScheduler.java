@@ -22,21 +22,33 @@ package com.loohp.limbo.scheduler;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.plugins.LimboPlugin;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Keeps tasks in a hierarchical timing wheel of {@link #LEVELS} levels with {@link #WHEEL_SIZE} slots each, measured in ticks.
+ * Any thread may schedule or cancel tasks, these requests are queued and applied by the tick thread in {@link #collectTasks(long)},
+ * which is the only thread touching the wheel.
+ */
 public class LimboScheduler {
 	
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4;
+	private static final long MAX_SPAN = (1L << (WHEEL_BITS * LEVELS)) - 1;
+	
 	private AtomicInteger idProvider = new AtomicInteger(0);
-	private Map<Long, List<LimboSchedulerTask>> registeredTasks = new HashMap<>();
-	private Map<Integer, LimboSchedulerTask> tasksById = new HashMap<>();
-	private Set<Integer> cancelledTasks = new HashSet<>();
+	private Map<Integer, LimboSchedulerTask> tasksById = new ConcurrentHashMap<>();
+	private Queue<LimboSchedulerTask> pendingTasks = new ConcurrentLinkedQueue<>();
+	private Queue<LimboSchedulerTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+	private LimboSchedulerTask[] slots = new LimboSchedulerTask[LEVELS * WHEEL_SIZE];
+	private long wheelTick = -1;
 	
 	public LimboScheduler() {
 		
@@ -47,19 +59,35 @@ public class LimboScheduler {
 	}
 	
 	public void cancelTask(int taskId) {
-		if (tasksById.containsKey(taskId)) {
-			cancelledTasks.add(taskId);
+		LimboSchedulerTask task = tasksById.remove(taskId);
+		if (task != null) {
+			task.cancelled = true;
+			cancelledTasks.add(task);
 		}
 	}
 	
 	public void cancelTask(LimboPlugin plugin) {
 		for (LimboSchedulerTask task : tasksById.values()) {
 			if (task.getPlugin().getName().equals(plugin.getName())) {
-				cancelledTasks.add(task.getTaskId());
+				cancelTask(task.getTaskId());
 			}
 		}
 	}
 	
+	private int schedule(int taskId, LimboPlugin plugin, LimboTask task, LimboSchedulerTaskType type, long delay, long period) {
+		if (delay <= 0) {
+			delay = 1;
+		}
+		if (period <= 0) {
+			period = 1;
+		}
+		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, type, type == LimboSchedulerTaskType.TIMER_SYNC || type == LimboSchedulerTaskType.TIMER_ASYNC ? period : 0);
+		st.deadline = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
+		tasksById.put(taskId, st);
+		pendingTasks.add(st);
+		return taskId;
+	}
+	
 	protected int runTask(int taskId, LimboPlugin plugin, LimboTask task) {
 		return runTaskLater(taskId, plugin, task, 0);
 	}
@@ -69,19 +97,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskLater(int taskId, LimboPlugin plugin, LimboTask task, long delay) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.SYNC, 0);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(taskId, plugin, task, LimboSchedulerTaskType.SYNC, delay, 0);
 	}
 	
 	public int runTaskLater(LimboPlugin plugin, LimboTask task, long delay) {
@@ -97,19 +113,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskLaterAsync(int taskId, LimboPlugin plugin, LimboTask task, long delay) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.ASYNC, 0);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(taskId, plugin, task, LimboSchedulerTaskType.ASYNC, delay, 0);
 	}
 	
 	public int runTaskLaterAsync(LimboPlugin plugin, LimboTask task, long delay) {
@@ -117,22 +121,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskTimer(int taskId, LimboPlugin plugin, LimboTask task, long delay, long period) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_SYNC, period);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		if (period <= 0) {
-			period = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(taskId, plugin, task, LimboSchedulerTaskType.TIMER_SYNC, delay, period);
 	}
 	
 	public int runTaskTimer(LimboPlugin plugin, LimboTask task, long delay, long period) {
@@ -140,22 +129,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskTimerAsync(int taskId, LimboPlugin plugin, LimboTask task, long delay, long period) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_ASYNC, period);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		if (period <= 0) {
-			period = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(taskId, plugin, task, LimboSchedulerTaskType.TIMER_ASYNC, delay, period);
 	}
 	
 	public int runTaskTimerAsync(LimboPlugin plugin, LimboTask task, long delay, long period) {
@@ -163,40 +137,129 @@ public class LimboScheduler {
 	}
 	
 	protected CurrentSchedulerTask collectTasks(long currentTick) {
-		List<LimboSchedulerTask> tasks = registeredTasks.remove(currentTick);
-		if (tasks == null) {
-			return null;
+		if (wheelTick < 0) {
+			wheelTick = currentTick - 1;
+		}
+		LimboSchedulerTask task;
+		while ((task = cancelledTasks.poll()) != null) {
+			unlink(task);
+		}
+		while ((task = pendingTasks.poll()) != null) {
+			if (!task.cancelled) {
+				insert(task, wheelTick + 1);
+			}
 		}
 		
-		List<LimboSchedulerTask> asyncTasks = new LinkedList<>();
-		List<LimboSchedulerTask> syncedTasks = new LinkedList<>();
+		List<LimboSchedulerTask> asyncTasks = null;
+		List<LimboSchedulerTask> syncedTasks = null;
 		
-		for (LimboSchedulerTask task : tasks) {
-			int taskId = task.getTaskId();
-			if (cancelledTasks.contains(taskId)) {
-				cancelledTasks.remove(taskId);
-				continue;
-			}
-			
-			switch (task.getType()) {
-			case ASYNC:
-				asyncTasks.add(task);
-				break;
-			case SYNC:
-				syncedTasks.add(task);
-				break;
-			case TIMER_ASYNC:
-				asyncTasks.add(task);
-				runTaskTimerAsync(task.getTaskId(), task.getPlugin(), task.getTask(), task.getPeriod(), task.getPeriod());
-				break;
-			case TIMER_SYNC:
-				syncedTasks.add(task);
-				runTaskTimer(task.getTaskId(), task.getPlugin(), task.getTask(), task.getPeriod(), task.getPeriod());
-				break;
+		while (wheelTick < currentTick) {
+			wheelTick++;
+			cascade(1);
+			int slot = (int) (wheelTick & WHEEL_MASK);
+			LimboSchedulerTask expired = slots[slot];
+			slots[slot] = null;
+			while (expired != null) {
+				task = expired;
+				expired = task.next;
+				task.slot = -1;
+				task.previous = null;
+				task.next = null;
+				if (task.cancelled) {
+					continue;
+				}
+				
+				switch (task.getType()) {
+				case ASYNC:
+				case TIMER_ASYNC:
+					if (asyncTasks == null) {
+						asyncTasks = new LinkedList<>();
+					}
+					asyncTasks.add(task);
+					break;
+				case SYNC:
+				case TIMER_SYNC:
+					if (syncedTasks == null) {
+						syncedTasks = new LinkedList<>();
+					}
+					syncedTasks.add(task);
+					break;
+				}
+				if (task.getPeriod() > 0) {
+					task.deadline = wheelTick + task.getPeriod();
+					insert(task, wheelTick + 1);
+				} else {
+					tasksById.remove(task.getTaskId(), task);
+				}
 			}
 		}
 		
-		return new CurrentSchedulerTask(syncedTasks, asyncTasks);
+		if (asyncTasks == null && syncedTasks == null) {
+			return null;
+		}
+		return new CurrentSchedulerTask(syncedTasks == null ? new LinkedList<>() : syncedTasks, asyncTasks == null ? new LinkedList<>() : asyncTasks);
+	}
+	
+	/**
+	 * Moves the tasks of the next slot of a level down once the level below has completed a full turn.
+	 */
+	private void cascade(int level) {
+		if (level >= LEVELS || ((wheelTick >> (WHEEL_BITS * (level - 1))) & WHEEL_MASK) != 0) {
+			return;
+		}
+		cascade(level + 1);
+		int slot = level * WHEEL_SIZE + (int) ((wheelTick >> (WHEEL_BITS * level)) & WHEEL_MASK);
+		LimboSchedulerTask task = slots[slot];
+		slots[slot] = null;
+		while (task != null) {
+			LimboSchedulerTask next = task.next;
+			task.slot = -1;
+			task.previous = null;
+			task.next = null;
+			insert(task, wheelTick);
+			task = next;
+		}
+	}
+	
+	/**
+	 * Links a task into the slot of its deadline, tasks already due are placed at the earliest tick the wheel still processes.
+	 */
+	private void insert(LimboSchedulerTask task, long earliest) {
+		long deadline = Math.max(task.deadline, earliest);
+		if (deadline - wheelTick > MAX_SPAN) {
+			deadline = wheelTick + MAX_SPAN;
+		}
+		long ticks = deadline - wheelTick;
+		int level = 0;
+		while (level < LEVELS - 1 && ticks >= 1L << (WHEEL_BITS * (level + 1))) {
+			level++;
+		}
+		int slot = level * WHEEL_SIZE + (int) ((deadline >> (WHEEL_BITS * level)) & WHEEL_MASK);
+		LimboSchedulerTask head = slots[slot];
+		task.slot = slot;
+		task.previous = null;
+		task.next = head;
+		if (head != null) {
+			head.previous = task;
+		}
+		slots[slot] = task;
+	}
+	
+	private void unlink(LimboSchedulerTask task) {
+		if (task.slot < 0) {
+			return;
+		}
+		if (task.previous == null) {
+			slots[task.slot] = task.next;
+		} else {
+			task.previous.next = task.next;
+		}
+		if (task.next != null) {
+			task.next.previous = task.previous;
+		}
+		task.slot = -1;
+		task.previous = null;
+		task.next = null;
 	}
 	
 	public static class CurrentSchedulerTask {
@@ -227,6 +290,12 @@ public class LimboScheduler {
 		private LimboSchedulerTaskType type;
 		private long period;
 		
+		private volatile boolean cancelled;
+		private long deadline;
+		private int slot = -1;
+		private LimboSchedulerTask previous;
+		private LimboSchedulerTask next;
+		
 		private LimboSchedulerTask(LimboPlugin plugin, LimboTask task, int taskId, LimboSchedulerTaskType type, long period) {
 			this.plugin = plugin;
 			this.task = task;
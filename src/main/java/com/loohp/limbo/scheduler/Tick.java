@@ -20,56 +20,41 @@
 package com.loohp.limbo.scheduler;
 
 import com.loohp.limbo.Limbo;
+import com.loohp.limbo.file.ServerProperties;
 import com.loohp.limbo.scheduler.LimboScheduler.CurrentSchedulerTask;
 import com.loohp.limbo.scheduler.LimboScheduler.LimboSchedulerTask;
+import com.loohp.limbo.utils.ThreadUtils;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Tick {
 	
-	private int tickingInterval;
+	private static final int MSPT_SAMPLE_SECONDS = 60;
+	
+	private final long tickingInterval;
 	private AtomicLong tick = new AtomicLong(0);
 	
-	private List<Thread> threads = new ArrayList<>();
-	private Queue<LimboSchedulerTask> asyncTasksQueue = new ConcurrentLinkedQueue<>();
+	private final ThreadPoolExecutor asyncExecutor;
+	private final TickStatistics statistics;
 	
 	public Tick(Limbo instance) {
+		ServerProperties properties = instance.getServerProperties();
+		asyncExecutor = ThreadUtils.newWorkerPool("Limbo-Async-", properties.getAsyncWorkerThreads(), properties.isVirtualThreads());
+		double ticksPerSecond = properties.getDefinedTicksPerSecond();
+		tickingInterval = Math.round(TimeUnit.SECONDS.toNanos(1) / ticksPerSecond);
+		statistics = new TickStatistics(ticksPerSecond, (int) Math.ceil(ticksPerSecond * MSPT_SAMPLE_SECONDS));
+		//late ticks are caught up back to back, but never more than a second worth of them
+		long maxCatchUp = Math.max(1, Math.round(ticksPerSecond)) * tickingInterval;
 		new Thread(() -> {
-			tickingInterval = (int) Math.round(1000.0 / Limbo.getInstance().getServerProperties().getDefinedTicksPerSecond());
-
-			for (int i = 0; i < 4; i++) {
-				Thread thread = new Thread(() -> {
-					while (instance.isRunning()) {
-						LimboSchedulerTask task = asyncTasksQueue.poll();
-						if (task == null) {
-							try {
-								TimeUnit.NANOSECONDS.sleep(10000);
-							} catch (InterruptedException e) {
-								e.printStackTrace();
-							}
-						} else {
-							LimboTask limboTask = task.getTask();
-							try {
-								limboTask.run();
-							} catch (Throwable e) {
-								System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
-								e.printStackTrace();
-							}
-						}
-					}
-				});
-				thread.start();
-				threads.add(thread);
-			}
+			long nextTick = System.nanoTime();
 
 			while (instance.isRunning()) {
-				long start = System.currentTimeMillis();
+				long start = System.nanoTime();
 				tick.incrementAndGet();
 				instance.getPlayers().forEach(each -> {
 					if (each.clientConnection.isReady()) {
@@ -97,45 +82,76 @@ public class Tick {
 
 				CurrentSchedulerTask tasks = instance.getScheduler().collectTasks(getCurrentTick());
 				if (tasks != null) {
-					asyncTasksQueue.addAll(tasks.getAsyncTasks());
-
-					tasks.getSyncedTasks().forEach(task -> {
-						LimboTask limboTask = task.getTask();
-						try {
-							limboTask.run();
-						} catch (Throwable e) {
-							System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
-							e.printStackTrace();
+					try {
+						for (LimboSchedulerTask task : tasks.getAsyncTasks()) {
+							asyncExecutor.execute(() -> runTask(task));
 						}
-					});
+					} catch (RejectedExecutionException ignore) {
+						//shutting down
+					}
+
+					tasks.getSyncedTasks().forEach(task -> runTask(task));
 				}
 
-				long end = System.currentTimeMillis();
+				//packets queued during the tick leave in one write per connection, written off the tick thread
+				instance.getPlayers().forEach(each -> each.clientConnection.requestFlush());
+
+				long end = System.nanoTime();
+				statistics.recordTick(start, end);
+
+				//deadlines advance by a fixed step so sleep inaccuracies do not accumulate
+				nextTick += tickingInterval;
+				long behind = end - nextTick;
+				if (behind > maxCatchUp) {
+					statistics.recordOverrun(behind / tickingInterval);
+					nextTick = end;
+				}
 				try {
-					TimeUnit.MILLISECONDS.sleep(tickingInterval - (end - start));
+					long wait;
+					while ((wait = nextTick - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
 				} catch (InterruptedException e) {
 					e.printStackTrace();
 				}
 			}
-		}).start();
+		}, "Limbo-Tick").start();
 	}
 	
 	public long getCurrentTick() {
 		return tick.get();
 	}
 	
-	@SuppressWarnings("deprecation")
+	public TickStatistics getStatistics() {
+		return statistics;
+	}
+	
+	private void runTask(LimboSchedulerTask task) {
+		LimboTask limboTask = task.getTask();
+		try {
+			limboTask.run();
+		} catch (Throwable e) {
+			System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	public Executor getAsyncExecutor() {
+		return asyncExecutor;
+	}
+	
+	/**
+	 * Stops accepting async tasks and waits for the running ones to finish, workers still busy after the wait are interrupted.
+	 */
 	public void waitAndKillThreads(long waitTime) {
-		long end = System.currentTimeMillis() + waitTime;
-		for (Thread thread : threads) {
-			try {
-				thread.join(Math.max(end - System.currentTimeMillis(), 1));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			if (thread.isAlive()) {
-				thread.stop();
+		asyncExecutor.shutdown();
+		try {
+			if (!asyncExecutor.awaitTermination(waitTime, TimeUnit.MILLISECONDS)) {
+				asyncExecutor.shutdownNow();
 			}
+		} catch (InterruptedException e) {
+			asyncExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
 		}
 	}
 	
@@ -0,0 +1,158 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.scheduler;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling tick statistics of the server heartbeat.
+ * TPS is sampled once per second into exponentially weighted 1, 5 and 15 minute averages,
+ * MSPT percentiles are taken from the durations of the most recent ticks.
+ */
+public class TickStatistics {
+
+	private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	private static final double[] WINDOWS_SECONDS = {60, 300, 900};
+
+	private final double targetTps;
+	private final long[] durations;
+	private final double[] averages;
+	private int durationIndex;
+	private int durationCount;
+
+	private long sampleStart;
+	private int sampleTicks;
+	private long overruns;
+	private long skippedTicks;
+
+	public TickStatistics(double targetTps, int durationSamples) {
+		this.targetTps = targetTps;
+		this.durations = new long[Math.max(1, durationSamples)];
+		this.averages = new double[WINDOWS_SECONDS.length];
+		Arrays.fill(averages, targetTps);
+		this.durationIndex = 0;
+		this.durationCount = 0;
+		this.sampleStart = -1;
+		this.sampleTicks = 0;
+		this.overruns = 0;
+		this.skippedTicks = 0;
+	}
+
+	protected synchronized void recordTick(long startNanos, long endNanos) {
+		durations[durationIndex] = endNanos - startNanos;
+		durationIndex = (durationIndex + 1) % durations.length;
+		if (durationCount < durations.length) {
+			durationCount++;
+		}
+
+		if (sampleStart < 0) {
+			sampleStart = startNanos;
+			return;
+		}
+		sampleTicks++;
+		long elapsed = startNanos - sampleStart;
+		if (elapsed >= SAMPLE_INTERVAL) {
+			double seconds = elapsed / 1.0E9;
+			double tps = sampleTicks / seconds;
+			for (int i = 0; i < averages.length; i++) {
+				double decay = Math.exp(-seconds / WINDOWS_SECONDS[i]);
+				averages[i] = averages[i] * decay + tps * (1 - decay);
+			}
+			sampleStart = startNanos;
+			sampleTicks = 0;
+		}
+	}
+
+	protected synchronized void recordOverrun(long skipped) {
+		overruns++;
+		skippedTicks += skipped;
+	}
+
+	public double getTargetTps() {
+		return targetTps;
+	}
+
+	/**
+	 * Returns the 1, 5 and 15 minute TPS averages.
+	 */
+	public synchronized double[] getTps() {
+		return averages.clone();
+	}
+
+	public double getTps1m() {
+		return getTps()[0];
+	}
+
+	public double getTps5m() {
+		return getTps()[1];
+	}
+
+	public double getTps15m() {
+		return getTps()[2];
+	}
+
+	/**
+	 * Returns the given percentile (0 to 100) of the recent tick durations in milliseconds.
+	 */
+	public double getMspt(double percentile) {
+		long[] sorted;
+		synchronized (this) {
+			if (durationCount == 0) {
+				return 0;
+			}
+			sorted = Arrays.copyOf(durations, durationCount);
+		}
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1.0E6;
+	}
+
+	public double getMedianMspt() {
+		return getMspt(50);
+	}
+
+	public double getMspt99() {
+		return getMspt(99);
+	}
+
+	public synchronized double getAverageMspt() {
+		if (durationCount == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < durationCount; i++) {
+			total += durations[i];
+		}
+		return total / (double) durationCount / 1.0E6;
+	}
+
+	/**
+	 * Returns how many times the heartbeat fell so far behind that it gave up catching up.
+	 */
+	public synchronized long getOverruns() {
+		return overruns;
+	}
+
+	public synchronized long getSkippedTicks() {
+		return skippedTicks;
+	}
+
+}
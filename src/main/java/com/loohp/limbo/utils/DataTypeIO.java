@@ -32,7 +32,6 @@ import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.EndTag;
 import net.querz.nbt.tag.Tag;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -228,18 +227,12 @@ public class DataTypeIO {
 	}
 	
 	public static int getVarIntLength(int value) throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		DataOutputStream out = new DataOutputStream(buffer);
-	    do {
-	        byte temp = (byte)(value & 0b01111111);
-	        // Note: >>> means that the sign bit is shifted with the rest of the number rather than being left alone
-	        value >>>= 7;
-	        if (value != 0) {
-	            temp |= 0b10000000;
-	        }
-	        out.writeByte(temp);
-	    } while (value != 0);
-	    return buffer.toByteArray().length;
+		int length = 1;
+		while ((value & 0xFFFFFF80) != 0) {
+			value >>>= 7;
+			length++;
+		}
+		return length;
 	}
 	
 	public static long readVarLong(DataInputStream in) throws IOException {
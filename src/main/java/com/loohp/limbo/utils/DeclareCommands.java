@@ -22,16 +22,51 @@ package com.loohp.limbo.utils;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.commands.CommandSender;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutDeclareCommands;
+import com.loohp.limbo.player.Player;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DeclareCommands {
 	
+	private static final Map<Set<String>, CachedTree> CACHE = new ConcurrentHashMap<>();
+	//trees are only served while they were built in the current generation, so a tree built during an invalidation is never reused
+	private static final AtomicLong GENERATION = new AtomicLong();
+	
+	/**
+	 * Drops the cached command trees, called whenever commands are registered or unregistered or permissions are reloaded.
+	 */
+	public static void invalidate() {
+		GENERATION.incrementAndGet();
+		CACHE.clear();
+	}
+	
+	/**
+	 * Returns the command tree of a player, the tree is built once for every distinct set of permissions.
+	 * Executors registered for every command may complete differently for each player, so nothing is cached while there are any.
+	 */
 	public static PacketPlayOutDeclareCommands getDeclareCommandsPacket(CommandSender sender) throws IOException {
+		if (!(sender instanceof Player) || Limbo.getInstance().getPluginManager().hasCatchAllExecutors()) {
+			return createDeclareCommandsPacket(sender);
+		}
+		Set<String> permissions = Limbo.getInstance().getPermissionsManager().getEffectivePermissions((Player) sender);
+		long generation = GENERATION.get();
+		CachedTree tree = CACHE.get(permissions);
+		if (tree == null || tree.generation != generation) {
+			tree = new CachedTree(generation, createDeclareCommandsPacket(sender));
+			CACHE.put(permissions, tree);
+		}
+		return tree.packet;
+	}
+	
+	private static PacketPlayOutDeclareCommands createDeclareCommandsPacket(CommandSender sender) throws IOException {
 		List<String> commands = Limbo.getInstance().getPluginManager().getTabOptions(sender, new String[0]);
 		
 		if (commands.isEmpty()) {
@@ -70,5 +105,17 @@ public class DeclareCommands {
 		
 		return new PacketPlayOutDeclareCommands(buffer.toByteArray());
 	}
+	
+	private static class CachedTree {
+		
+		private final long generation;
+		private final PacketPlayOutDeclareCommands packet;
+		
+		private CachedTree(long generation, PacketPlayOutDeclareCommands packet) {
+			this.generation = generation;
+			this.packet = packet;
+		}
+		
+	}
 
 }
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in power of two millisecond buckets.
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	public void record(long nanos) {
+		long millis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(nanos));
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+		count.incrementAndGet();
+		total.addAndGet(millis);
+		max.accumulateAndGet(millis, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getAverage() {
+		long count = this.count.get();
+		return count == 0 ? 0 : total.get() / (double) count;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the given percentile (0 to 100) in milliseconds.
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count));
+		for (int i = 0; i < BUCKETS; i++) {
+			rank -= counts[i];
+			if (rank <= 0) {
+				return Math.min((1L << i) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+}
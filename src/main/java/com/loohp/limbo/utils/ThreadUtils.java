@@ -0,0 +1,92 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadUtils {
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            //preview builds expose the api but refuse to start virtual threads
+            ((ThreadFactory) builderFactory.invoke(ofVirtual.invoke(null))).newThread(() -> {}).start();
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory of virtual threads when requested and supported by the running JVM,
+     * otherwise a factory of named platform threads.
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix, boolean virtual) {
+        if (virtual && isVirtualThreadsSupported()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return task -> new Thread(task, namePrefix + counter.incrementAndGet());
+    }
+
+    /**
+     * Returns a pool of at most the given number of platform threads, further tasks wait in a queue and idle threads are stopped.
+     * Virtual threads are cheap enough to give every task its own, so the pool is unbounded when they are requested and supported.
+     */
+    public static ThreadPoolExecutor newWorkerPool(String namePrefix, int threads, boolean virtual) {
+        if (virtual && isVirtualThreadsSupported()) {
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), newThreadFactory(namePrefix, true));
+        }
+        int workers = Math.max(1, threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), newThreadFactory(namePrefix, false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import java.util.Arrays;
+
+/**
+ * The block states of a 16x16x16 section stored as global palette ids.
+ * Ids are packed into longs the way they are sent to clients, through a palette of up to 8 bits
+ * or directly once a section holds more than 256 different states.
+ */
+public class BlockSection {
+
+	public static final int SIZE = 4096;
+	public static final int MIN_BITS = 4;
+	public static final int MAX_PALETTE_BITS = 8;
+
+	private volatile Storage storage;
+	private int paletteSize;
+	private int nonAirCount;
+
+	public BlockSection() {
+		this.storage = new Storage(MIN_BITS, new int[1 << MIN_BITS]);
+		this.storage.palette[0] = GeneratedBlockDataMappings.getAirStateID();
+		this.paletteSize = 1;
+		this.nonAirCount = 0;
+	}
+
+	public static int longsNeeded(int bits) {
+		int valuesPerLong = 64 / bits;
+		return (SIZE + valuesPerLong - 1) / valuesPerLong;
+	}
+
+	public static int getIndex(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	public int get(int x, int y, int z) {
+		return get(getIndex(x, y, z));
+	}
+
+	public int get(int index) {
+		return storage.get(index);
+	}
+
+	public void set(int x, int y, int z, int id) {
+		set(getIndex(x, y, z), id);
+	}
+
+	public synchronized void set(int index, int id) {
+		Storage storage = this.storage;
+		int previous = storage.get(index);
+		if (previous == id) {
+			return;
+		}
+		int airStateID = GeneratedBlockDataMappings.getAirStateID();
+		if (previous == airStateID) {
+			nonAirCount++;
+		} else if (id == airStateID) {
+			nonAirCount--;
+		}
+		if (storage.palette == null) {
+			storage.setRaw(index, id);
+			return;
+		}
+		for (int i = 0; i < paletteSize; i++) {
+			if (storage.palette[i] == id) {
+				storage.setRaw(index, i);
+				return;
+			}
+		}
+		if (paletteSize == storage.palette.length) {
+			storage = resize(storage);
+			if (storage.palette == null) {
+				storage.setRaw(index, id);
+				this.storage = storage;
+				return;
+			}
+		}
+		storage.palette[paletteSize] = id;
+		storage.setRaw(index, paletteSize++);
+		this.storage = storage;
+	}
+
+	private static Storage resize(Storage storage) {
+		Storage resized;
+		if (storage.bits < MAX_PALETTE_BITS) {
+			resized = new Storage(storage.bits + 1, Arrays.copyOf(storage.palette, 1 << (storage.bits + 1)));
+			for (int i = 0; i < SIZE; i++) {
+				resized.setRaw(i, storage.getRaw(i));
+			}
+		} else {
+			resized = new Storage(GeneratedBlockDataMappings.getGlobalPaletteBits(), null);
+			for (int i = 0; i < SIZE; i++) {
+				resized.setRaw(i, storage.get(i));
+			}
+		}
+		return resized;
+	}
+
+	/**
+	 * The number of bits of each entry of the packed data.
+	 */
+	public int getBits() {
+		return storage.bits;
+	}
+
+	/**
+	 * The packed entries, which are palette indexes or global palette ids when the section has no palette.
+	 */
+	public long[] getData() {
+		return storage.data;
+	}
+
+	/**
+	 * Returns the palette of this section, or null if the entries are global palette ids.
+	 */
+	public synchronized int[] getPalette() {
+		Storage storage = this.storage;
+		return storage.palette == null ? null : Arrays.copyOf(storage.palette, paletteSize);
+	}
+
+	public synchronized int getNonAirCount() {
+		return nonAirCount;
+	}
+
+	public synchronized boolean isEmpty() {
+		return nonAirCount == 0;
+	}
+
+	private static class Storage {
+
+		private final int bits;
+		private final int valuesPerLong;
+		private final long mask;
+		private final long[] data;
+		private final int[] palette;
+
+		private Storage(int bits, int[] palette) {
+			this.bits = bits;
+			this.valuesPerLong = 64 / bits;
+			this.mask = (1L << bits) - 1;
+			this.data = new long[longsNeeded(bits)];
+			this.palette = palette;
+		}
+
+		private int get(int index) {
+			int value = getRaw(index);
+			return palette == null ? value : palette[value];
+		}
+
+		private int getRaw(int index) {
+			return (int) ((data[index / valuesPerLong] >>> ((index % valuesPerLong) * bits)) & mask);
+		}
+
+		private void setRaw(int index, int value) {
+			int longIndex = index / valuesPerLong;
+			int shift = (index % valuesPerLong) * bits;
+			data[longIndex] = (data[longIndex] & ~(mask << shift)) | (((long) value & mask) << shift);
+		}
+
+	}
+
+}
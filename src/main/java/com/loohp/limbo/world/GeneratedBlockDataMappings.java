@@ -21,6 +21,8 @@ package com.loohp.limbo.world;
 
 import com.loohp.limbo.Limbo;
 import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -31,13 +33,18 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class GeneratedBlockDataMappings {
 	
-	private static JSONObject globalPalette = new JSONObject();
+	private static Map<String, BlockStateIndex> blockStateIndexes = new HashMap<>();
+	private static CompoundTag[] statesById = new CompoundTag[0];
+	private static int airStateID = 0;
 	
 	static {
 		String block = "blocks.json";
@@ -50,46 +57,151 @@ public class GeneratedBlockDataMappings {
             }
         }
         
+        JSONObject globalPalette = new JSONObject();
         try {
         	globalPalette = (JSONObject) new JSONParser().parse(new FileReader(file));
 		} catch (IOException | ParseException e) {
 			e.printStackTrace();
-		}		
+		}
+
+		int size = 0;
+		for (Object data : globalPalette.values()) {
+			for (Object state : (JSONArray) ((JSONObject) data).get("states")) {
+				size = Math.max(size, (int) (long) ((JSONObject) state).get("id") + 1);
+			}
+		}
+		statesById = new CompoundTag[size];
+		for (Object entry : globalPalette.entrySet()) {
+			String blockname = (String) ((Map.Entry<?, ?>) entry).getKey();
+			JSONArray states = (JSONArray) ((JSONObject) ((Map.Entry<?, ?>) entry).getValue()).get("states");
+			blockStateIndexes.put(blockname, new BlockStateIndex(blockname, states));
+		}
+		CompoundTag air = new CompoundTag();
+		air.putString("Name", "minecraft:air");
+		airStateID = getGlobalPaletteIDFromState(air);
+	}
+
+	/**
+	 * Returns the block state of a global palette id, the returned tag is shared and must not be modified.
+	 */
+	public static CompoundTag getStateFromGlobalPaletteID(int id) {
+		if (id < 0 || id >= statesById.length || statesById[id] == null) {
+			return statesById[airStateID];
+		}
+		return statesById[id];
+	}
+
+	public static int getGlobalPaletteSize() {
+		return statesById.length;
+	}
+
+	/**
+	 * The number of bits needed to store any global palette id, which is also the size of the entries of a direct palette.
+	 */
+	public static int getGlobalPaletteBits() {
+		return 32 - Integer.numberOfLeadingZeros(statesById.length - 1);
+	}
+
+	public static int getAirStateID() {
+		return airStateID;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static int getGlobalPaletteIDFromState(CompoundTag tag) {
-		String blockname = tag.getString("Name");
-		
-		JSONObject data = (JSONObject) globalPalette.get(blockname);
-		Object obj = data.get("properties");
-		if (obj == null) {
-			return (int) (long) ((JSONObject) ((JSONArray) data.get("states")).get(0)).get("id");
+		BlockStateIndex index = blockStateIndexes.get(tag.getString("Name"));
+		if (index == null) {
+			return airStateID;
 		}
-		
-		//JSONObject properties = (JSONObject) obj;
-		
-		if (tag.containsKey("Properties")) {
-			CompoundTag blockProp = tag.get("Properties", CompoundTag.class);
-			Map<String, String> blockstate = new HashMap<>();
-			for (String key : blockProp.keySet()) {
-				blockstate.put(key, blockProp.getString(key));
+		return index.getID(tag.containsKey("Properties") ? tag.get("Properties", CompoundTag.class) : null);
+	}
+
+	/**
+	 * The states of one block, indexed by the position of each property value so a state is found without comparing maps.
+	 * Properties missing from or unknown to a state resolve to the default state of the block.
+	 */
+	private static class BlockStateIndex {
+
+		private final int defaultID;
+		private final String[] propertyNames;
+		private final List<Map<String, Integer>> propertyValues;
+		private final int[] multipliers;
+		private final int[] ids;
+
+		private BlockStateIndex(String blockname, JSONArray states) {
+			int defaultID = -1;
+			Map<String, Map<String, Integer>> values = new LinkedHashMap<>();
+			for (Object state : states) {
+				JSONObject stateData = (JSONObject) state;
+				int id = (int) (long) stateData.get("id");
+				if (defaultID < 0 || Boolean.TRUE.equals(stateData.get("default"))) {
+					defaultID = id;
+				}
+				CompoundTag tag = new CompoundTag();
+				tag.putString("Name", blockname);
+				JSONObject properties = (JSONObject) stateData.get("properties");
+				if (properties != null && !properties.isEmpty()) {
+					CompoundTag propertiesTag = new CompoundTag();
+					for (Object property : properties.entrySet()) {
+						String key = (String) ((Map.Entry<?, ?>) property).getKey();
+						String value = (String) ((Map.Entry<?, ?>) property).getValue();
+						propertiesTag.putString(key, value);
+						Map<String, Integer> indexes = values.computeIfAbsent(key, k -> new HashMap<>());
+						indexes.putIfAbsent(value, indexes.size());
+					}
+					tag.put("Properties", propertiesTag);
+				}
+				statesById[id] = tag;
+			}
+			this.defaultID = defaultID;
+			this.propertyNames = values.keySet().toArray(new String[0]);
+			Arrays.sort(propertyNames);
+			this.propertyValues = new ArrayList<>(propertyNames.length);
+			this.multipliers = new int[propertyNames.length];
+			int combinations = 1;
+			for (int i = 0; i < propertyNames.length; i++) {
+				Map<String, Integer> indexes = values.get(propertyNames[i]);
+				propertyValues.add(indexes);
+				multipliers[i] = combinations;
+				combinations *= indexes.size();
 			}
-			
-			for (Object entry : (JSONArray) data.get("states")) {
-				JSONObject jsonobj = (JSONObject) entry;
-				if (((JSONObject) jsonobj.get("properties")).keySet().stream().allMatch(key -> Objects.equals(blockstate.get(key), ((JSONObject) jsonobj.get("properties")).get(key)))) {
-					return (int) (long) jsonobj.get("id");
+			this.ids = new int[combinations];
+			Arrays.fill(ids, defaultID);
+			for (Object state : states) {
+				JSONObject stateData = (JSONObject) state;
+				JSONObject properties = (JSONObject) stateData.get("properties");
+				int key = 0;
+				for (int i = 0; i < propertyNames.length; i++) {
+					Integer index = properties == null ? null : propertyValues.get(i).get(properties.get(propertyNames[i]));
+					if (index == null) {
+						key = -1;
+						break;
+					}
+					key += index * multipliers[i];
+				}
+				if (key >= 0) {
+					ids[key] = (int) (long) stateData.get("id");
 				}
 			}
 		}
-		
-		for (Object entry : (JSONArray) data.get("states")) {
-			if (((JSONObject) entry).containsKey("default") && ((boolean) ((JSONObject) entry).get("default"))) {
-				return (int) (long) ((JSONObject) entry).get("id");
+
+		private int getID(CompoundTag properties) {
+			if (properties == null || propertyNames.length == 0) {
+				return defaultID;
+			}
+			int key = 0;
+			for (int i = 0; i < propertyNames.length; i++) {
+				Tag<?> value = properties.get(propertyNames[i]);
+				if (!(value instanceof StringTag)) {
+					return defaultID;
+				}
+				Integer index = propertyValues.get(i).get(((StringTag) value).getValue());
+				if (index == null) {
+					return defaultID;
+				}
+				key += index * multipliers[i];
 			}
+			return ids[key];
 		}
-		return 0;
+
 	}
 
 }
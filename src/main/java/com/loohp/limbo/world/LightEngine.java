@@ -19,14 +19,24 @@
 
 package com.loohp.limbo.world;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public abstract class LightEngine {
+
+	public static final int SECTION_COUNT = 18;
+	public static final int SECTION_SIZE = 2048;
+
+	//shared by all sections lit at level 15, replaced by a copy before being written to
+	private static final byte[] FULL_SECTION = new byte[SECTION_SIZE];
 	
 	private static Map<String, Byte> blockLightLevelMapping = new HashMap<>();
+	private static volatile byte[] blockLightLevelsByStateID;
 	
 	static {
+		Arrays.fill(FULL_SECTION, (byte) 0xFF);
+
 		blockLightLevelMapping.put("minecraft:beacon", (byte) 15);
 		blockLightLevelMapping.put("minecraft:torch", (byte) 15);
 		blockLightLevelMapping.put("minecraft:sea_lantern", (byte) 15);
@@ -56,7 +66,238 @@ public abstract class LightEngine {
 	}
 	
 	public static int getBlockLight(BlockState block) {
-		return blockLightLevelMapping.getOrDefault(block.getType().toString(), (byte) 0);
+		return getBlockLight(block.getType().toString());
+	}
+
+	public static int getBlockLight(String type) {
+		return blockLightLevelMapping.getOrDefault(type, (byte) 0);
+	}
+
+	public static int getBlockLight(int stateID) {
+		byte[] levels = blockLightLevelsByStateID;
+		if (levels == null) {
+			levels = new byte[GeneratedBlockDataMappings.getGlobalPaletteSize()];
+			for (int i = 0; i < levels.length; i++) {
+				levels[i] = (byte) getBlockLight(GeneratedBlockDataMappings.getStateFromGlobalPaletteID(i).getString("Name"));
+			}
+			blockLightLevelsByStateID = levels;
+		}
+		return stateID >= 0 && stateID < levels.length ? levels[stateID] : 0;
+	}
+
+	protected final World world;
+	private final int chunkWidth;
+	private final int chunkLength;
+	//packed nibble arrays of each section in the order sent to clients, null when the section is completely dark
+	private byte[][] sections;
+	private long[] queue;
+	private int queueHead;
+	private int queueTail;
+
+	protected LightEngine(World world) {
+		this.world = world;
+		this.chunkWidth = world.getChunkWidth();
+		this.chunkLength = world.getChunkLength();
+		this.sections = new byte[chunkWidth * chunkLength * SECTION_COUNT][];
+		this.queue = new long[4096];
+		this.queueHead = 0;
+		this.queueTail = 0;
+	}
+
+	/**
+	 * Returns the level of light a block is lit at regardless of its surroundings.
+	 */
+	protected abstract int getSourceLevel(int x, int y, int z);
+
+	protected abstract boolean propagatesDownwards();
+
+	protected void clear() {
+		sections = new byte[chunkWidth * chunkLength * SECTION_COUNT][];
+	}
+
+	protected boolean isInBounds(int x, int y, int z) {
+		return x >= 0 && z >= 0 && y >= -16 && x < chunkWidth << 4 && z < chunkLength << 4 && y < (SECTION_COUNT << 4) - 16;
+	}
+
+	private int getSectionIndex(int x, int y, int z) {
+		return ((x >> 4) * chunkLength + (z >> 4)) * SECTION_COUNT + ((y + 16) >> 4);
+	}
+
+	private static int getNibbleIndex(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	public int getLightLevel(int x, int y, int z) {
+		if (!isInBounds(x, y, z)) {
+			return 0;
+		}
+		byte[] section = sections[getSectionIndex(x, y, z)];
+		if (section == null) {
+			return 0;
+		}
+		int index = getNibbleIndex(x, y, z);
+		return (section[index >> 1] >> ((index & 1) << 2)) & 15;
+	}
+
+	protected void setLightLevel(int x, int y, int z, int level) {
+		int sectionIndex = getSectionIndex(x, y, z);
+		byte[] section = sections[sectionIndex];
+		if (section == null) {
+			if (level == 0) {
+				return;
+			}
+			section = sections[sectionIndex] = new byte[SECTION_SIZE];
+		} else if (section == FULL_SECTION) {
+			if (level == 15) {
+				return;
+			}
+			section = sections[sectionIndex] = FULL_SECTION.clone();
+		}
+		int index = getNibbleIndex(x, y, z);
+		int shift = (index & 1) << 2;
+		section[index >> 1] = (byte) ((section[index >> 1] & ~(15 << shift)) | (level << shift));
+	}
+
+	protected void enqueue(int x, int y, int z) {
+		queue[queueTail] = ((long) x << 35) | ((long) z << 9) | (y + 16);
+		queueTail = (queueTail + 1) & (queue.length - 1);
+		if (queueTail == queueHead) {
+			long[] expanded = new long[queue.length << 1];
+			int split = queue.length - queueHead;
+			System.arraycopy(queue, queueHead, expanded, 0, split);
+			System.arraycopy(queue, 0, expanded, split, queueHead);
+			queueHead = 0;
+			queueTail = queue.length;
+			queue = expanded;
+		}
+	}
+
+	/**
+	 * Floods light outwards from every queued block until the queue is drained.
+	 */
+	protected void propagate() {
+		boolean downwards = propagatesDownwards();
+		while (queueHead != queueTail) {
+			long position = queue[queueHead];
+			queueHead = (queueHead + 1) & (queue.length - 1);
+			int x = (int) (position >>> 35);
+			int z = (int) ((position >>> 9) & 0x3FFFFFF);
+			int y = (int) (position & 0x1FF) - 16;
+			int level = getLightLevel(x, y, z) - 1;
+			if (level <= 0) {
+				continue;
+			}
+			spread(x + 1, y, z, level);
+			spread(x - 1, y, z, level);
+			spread(x, y + 1, z, level);
+			if (downwards) {
+				spread(x, y - 1, z, level);
+			}
+			spread(x, y, z + 1, level);
+			spread(x, y, z - 1, level);
+		}
+	}
+
+	private void spread(int x, int y, int z, int level) {
+		if (isInBounds(x, y, z) && getLightLevel(x, y, z) < level) {
+			setLightLevel(x, y, z, level);
+			enqueue(x, y, z);
+		}
+	}
+
+	/**
+	 * Recalculates the light inside of a box, seeded by the light sources inside of it and the unchanged light just outside of it.
+	 * The box has to contain every block whose light could be affected by the change.
+	 */
+	protected void relight(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		minX = Math.max(minX, 0);
+		minY = Math.max(minY, -16);
+		minZ = Math.max(minZ, 0);
+		maxX = Math.min(maxX, (chunkWidth << 4) - 1);
+		maxY = Math.min(maxY, (SECTION_COUNT << 4) - 17);
+		maxZ = Math.min(maxZ, (chunkLength << 4) - 1);
+		if (minX > maxX || minY > maxY || minZ > maxZ) {
+			return;
+		}
+		for (int x = minX; x <= maxX; x++) {
+			for (int z = minZ; z <= maxZ; z++) {
+				for (int y = minY; y <= maxY; y++) {
+					int level = getSourceLevel(x, y, z);
+					setLightLevel(x, y, z, level);
+					if (level > 0) {
+						enqueue(x, y, z);
+					}
+				}
+			}
+		}
+		for (int x = minX - 1; x <= maxX + 1; x++) {
+			for (int z = minZ - 1; z <= maxZ + 1; z++) {
+				boolean side = x < minX || x > maxX || z < minZ || z > maxZ;
+				for (int y = minY - 1; y <= maxY + 1; y += side ? 1 : maxY - minY + 2) {
+					if (getLightLevel(x, y, z) > 1) {
+						enqueue(x, y, z);
+					}
+				}
+			}
+		}
+		propagate();
+		compact(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4);
+		for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+			for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+				world.invalidateChunkPacket(chunkX, chunkZ);
+			}
+		}
+	}
+
+	protected void compact() {
+		compact(0, 0, chunkWidth - 1, chunkLength - 1);
+	}
+
+	/**
+	 * Drops the arrays of sections which are completely dark and shares the ones which are fully lit.
+	 */
+	protected void compact(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+		for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+			for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+				int offset = (chunkX * chunkLength + chunkZ) * SECTION_COUNT;
+				for (int i = offset; i < offset + SECTION_COUNT; i++) {
+					compactSection(i);
+				}
+			}
+		}
+	}
+
+	private void compactSection(int i) {
+		byte[] section = sections[i];
+		if (section == null || section == FULL_SECTION) {
+			return;
+		}
+		byte first = section[0];
+		if (first != 0 && first != (byte) 0xFF) {
+			return;
+		}
+		boolean uniform = true;
+		for (int u = 1; u < SECTION_SIZE; u++) {
+			if (section[u] != first) {
+				uniform = false;
+				break;
+			}
+		}
+		if (uniform) {
+			sections[i] = first == 0 ? null : FULL_SECTION;
+		}
+	}
+
+	/**
+	 * Returns the light of the 18 sections of a chunk from the bottom up, as packed nibble arrays of 2048 bytes.
+	 * A completely dark section is null. The arrays are shared with the engine and must not be modified.
+	 */
+	public byte[][] getLightSections(int chunkX, int chunkZ) {
+		if (chunkX < 0 || chunkZ < 0 || chunkX >= chunkWidth || chunkZ >= chunkLength) {
+			return null;
+		}
+		int offset = (chunkX * chunkLength + chunkZ) * SECTION_COUNT;
+		return Arrays.copyOfRange(sections, offset, offset + SECTION_COUNT);
 	}
 
 }
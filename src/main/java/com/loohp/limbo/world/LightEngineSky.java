@@ -19,88 +19,92 @@
 
 package com.loohp.limbo.world;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class LightEngineSky extends LightEngine {
-	
-	private World world;
-	private byte[][][] skyLightArray;
+
+	private static final int RADIUS = 15;
+	//the lowest y of the sky light seeded at the top of each column
+	private static final int NO_SKY = 272;
+
+	private int[] skyHeights;
 	
 	public LightEngineSky(World world) {
-		skyLightArray = new byte[world.getChunkWidth() * 16][16 * 18][world.getChunkLength() * 16];
-		/*
-		for (byte[][] arrayarray : skyLightArray) {
-			for (byte[] array : arrayarray) {
-				Arrays.fill(array, (byte) 0); 
-			}
-		}
-		*/
-		this.world = world;
+		super(world);
 		updateWorld();
 	}
 	
-	public void updateWorld() {
-		skyLightArray = new byte[world.getChunkWidth() * 16][16 * 18][world.getChunkLength() * 16];
-		for (int x = 0; x < world.getWidth(); x++) {
-			for (int z = 0; z < world.getLength(); z++) {
-				updateColumn(x, z);
+	public synchronized void updateWorld() {
+		clear();
+		int width = world.getChunkWidth() << 4;
+		int length = world.getChunkLength() << 4;
+		skyHeights = new int[width * length];
+		for (int x = 0; x < width; x++) {
+			for (int z = 0; z < length; z++) {
+				int height = calculateSkyHeight(x, z);
+				skyHeights[x * length + z] = height;
+				for (int y = height; y < NO_SKY; y++) {
+					setLightLevel(x, y, z, 15);
+				}
 			}
 		}
+		//only the seeds next to a lower lit column have anywhere to spread to
+		for (int x = 0; x < width; x++) {
+			for (int z = 0; z < length; z++) {
+				int height = getSkyHeight(x, z);
+				int top = Math.max(Math.max(getSkyHeight(x + 1, z), getSkyHeight(x - 1, z)), Math.max(getSkyHeight(x, z + 1), getSkyHeight(x, z - 1)));
+				for (int y = height; y < top; y++) {
+					enqueue(x, y, z);
+				}
+			}
+		}
+		propagate();
+		compact();
+		world.invalidateChunkPackets();
 	}
-	
-	private void updateColumn(int x, int z) {
-		for (int y = 272; y >= 256; y--) {
-			propergate(15, x, y, z);
+
+	/**
+	 * Relights the area around a block after it has been changed.
+	 */
+	public synchronized void updateBlock(int x, int y, int z) {
+		int length = world.getChunkLength() << 4;
+		if (!isInBounds(x, 0, z)) {
+			return;
 		}
-		for (int y = 255; y >= 0; y--) {
-			BlockState block = world.getBlock(x, y, z);
-			//System.out.println("X:" + x + " Y: " + y + " Z: " + z + " Block: " + block.getType().toString());
-			if (!block.getType().toString().equals("minecraft:air")) {
-				break;
-			}
-			propergate(15, x, y, z);
+		int oldHeight = skyHeights[x * length + z];
+		int newHeight = calculateSkyHeight(x, z);
+		if (oldHeight == newHeight) {
+			return;
 		}
+		skyHeights[x * length + z] = newHeight;
+		relight(x - RADIUS, Math.min(oldHeight, newHeight), z - RADIUS, x + RADIUS, Math.max(oldHeight, newHeight) + RADIUS, z + RADIUS);
 	}
-	
-	private void propergate(int level, int x, int y, int z) {
-		try {
-			if (skyLightArray[x][y + 16][z] < level) {
-				skyLightArray[x][y + 16][z] = (byte) level;
-				if (level > 1) {
-					try {propergate(level - 1, x + 1, y, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x - 1, y, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y + 1, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y, z + 1);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y, z - 1);} catch (ArrayIndexOutOfBoundsException e) {}
-				}
+
+	private int calculateSkyHeight(int x, int z) {
+		if (x >= world.getWidth() || z >= world.getLength()) {
+			return NO_SKY;
+		}
+		for (int y = 255; y >= 0; y--) {
+			if (!world.isAir(x, y, z)) {
+				return y + 1;
 			}
-		} catch (ArrayIndexOutOfBoundsException e) {}
+		}
+		return 0;
 	}
-	
-	public List<Byte[]> getSkyLightBitMask(int chunkX, int chunkZ) {
-		List<Byte[]> subchunks = new ArrayList<>(18);
-		int startX = chunkX * 16;
-		int endingX = startX + 16;
-		int startZ = chunkZ * 16;
-		int endingZ = startZ + 16;
-		
-		for (int sub = 17; sub >= 0; sub--) {
-			List<Byte> array = new ArrayList<>();
-			for (int y = sub * 16; y < (sub * 16) + 16; y++) {
-				for (int z = startZ; z < endingZ; z++) {
-					for (int x = startX; x < endingX; x += 2) {
-						int bit = skyLightArray[x][y][z];
-						bit = bit << 4;
-						bit |= skyLightArray[x + 1][y][z];
-						array.add((byte) bit);
-					}
-				}
-			}
-			subchunks.add(array.toArray(new Byte[2048]));
+
+	private int getSkyHeight(int x, int z) {
+		if (!isInBounds(x, 0, z)) {
+			return 0;
 		}
-		
-		return subchunks;
+		return skyHeights[x * (world.getChunkLength() << 4) + z];
+	}
+
+	@Override
+	protected int getSourceLevel(int x, int y, int z) {
+		return y >= getSkyHeight(x, z) && y < NO_SKY ? 15 : 0;
+	}
+
+	@Override
+	protected boolean propagatesDownwards() {
+		return false;
 	}
 
 }
@@ -38,9 +38,12 @@ public class Schematic {
 		byte[] blockdata = nbt.getByteArray("BlockData");
 		CompoundTag palette = nbt.getCompoundTag("Palette");
 		ListTag<CompoundTag> blockEntities = nbt.containsKey("BlockEntities") ? nbt.getListTag("BlockEntities").asTypedList(CompoundTag.class) : null;
-		Map<Integer, String> mapping = new HashMap<>();
+		Map<Integer, CompoundTag> mapping = new HashMap<>();
+		Map<Integer, Integer> stateIDs = new HashMap<>();
 		for (String key : palette.keySet()) {
-			mapping.put(palette.getInt(key), key);
+			CompoundTag block = SchematicConversionUtils.toBlockTag(key);
+			mapping.put(palette.getInt(key), block);
+			stateIDs.put(palette.getInt(key), GeneratedBlockDataMappings.getGlobalPaletteIDFromState(block));
 		}
 		
 		World world = new World(name, width, length, environment);
@@ -68,7 +71,7 @@ public class Schematic {
             int y = index / (width * length);
             int z = (index % (width * length)) / width;
             int x = (index % (width * length)) % width;
-            world.setBlock(x, y, z, mapping.get(value));
+            world.setBlock(x, y, z, mapping.get(value), stateIDs.get(value));
 
             Chunk chunk = world.getChunkAtWorldPos(x, z);
 			
@@ -26,6 +26,8 @@ import com.loohp.limbo.entity.DataWatcher.WatchableObject;
 import com.loohp.limbo.entity.Entity;
 import com.loohp.limbo.entity.EntityType;
 import com.loohp.limbo.location.Location;
+import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
+import com.loohp.limbo.network.protocol.packets.PacketOut;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityDestroy;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityMetadata;
 import com.loohp.limbo.player.Player;
@@ -34,15 +36,14 @@ import net.querz.mca.Chunk;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
-import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class World {
@@ -72,18 +73,24 @@ public class World {
 	private String name;
 	private Environment environment;
 	private Chunk[][] chunks;
+	private BlockSection[] blockSections;
 	private int width;
 	private int length;
 	private LightEngineBlock lightEngineBlock;
 	private LightEngineSky lightEngineSky;
 	private Map<Entity, DataWatcher> entities;
+	private Map<Long, ClientboundLevelChunkWithLightPacket> chunkPackets;
+	private ClientboundLevelChunkWithLightPacket emptyChunkPacket;
 
 	public World(String name, int width, int length, Environment environment) {
 		this.name = name;
 		this.environment = environment;
 		this.chunks = new Chunk[(width >> 4) + 1][(length >> 4) + 1];
+		this.blockSections = new BlockSection[chunks.length * chunks[0].length * 16];
 		this.width = width;
 		this.length = length;
+		this.chunkPackets = new ConcurrentHashMap<>();
+		this.emptyChunkPacket = new ClientboundLevelChunkWithLightPacket(0, 0, EMPTY_CHUNK, null, environment, null, null);
 
 		for (int x = 0; x < chunks.length; x++) {
 			for (int z = 0; z < chunks[x].length; z++) {
@@ -101,7 +108,7 @@ public class World {
 			this.lightEngineSky = new LightEngineSky(this);
 		}
 		
-		this.entities = new LinkedHashMap<>();
+		this.entities = new ConcurrentHashMap<>();
 	}
 
 	public LightEngineBlock getLightEngineBlock() {
@@ -117,13 +124,42 @@ public class World {
 	}
 
 	protected void setBlock(int x, int y, int z, String blockdata) {
+		CompoundTag block = SchematicConversionUtils.toBlockTag(blockdata);
+		setBlock(x, y, z, block, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(block));
+	}
+
+	void setBlock(int x, int y, int z, CompoundTag block, int stateID) {
 		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
 		if (chunk == null) {
 			chunk = Chunk.newChunk();
 			this.chunks[(x >> 4)][(z >> 4)] = chunk;
 		}
-		CompoundTag block = SchematicConversionUtils.toBlockTag(blockdata);
 		chunk.setBlockStateAt(x, y, z, block, false);
+		int index = getBlockSectionIndex(x, y, z);
+		BlockSection section = blockSections[index];
+		if (section == null) {
+			if (stateID == GeneratedBlockDataMappings.getAirStateID()) {
+				return;
+			}
+			section = blockSections[index] = new BlockSection();
+		}
+		section.set(x, y, z, stateID);
+		invalidateChunkPacket(x >> 4, z >> 4);
+	}
+
+	private int getBlockSectionIndex(int x, int y, int z) {
+		return ((x >> 4) * chunks[0].length + (z >> 4)) * 16 + (y >> 4);
+	}
+
+	/**
+	 * Returns the global palette id of the block state at a position, without going through NBT.
+	 */
+	public int getBlockStateID(int x, int y, int z) {
+		if (y < 0 || y > 255 || x < 0 || z < 0 || (x >> 4) >= chunks.length || (z >> 4) >= chunks[0].length) {
+			return GeneratedBlockDataMappings.getAirStateID();
+		}
+		BlockSection section = blockSections[getBlockSectionIndex(x, y, z)];
+		return section == null ? GeneratedBlockDataMappings.getAirStateID() : section.get(x, y, z);
 	}
 
 	public BlockState getBlock(BlockPosition blockPosition) {
@@ -131,18 +167,7 @@ public class World {
 	}
 	
 	public BlockState getBlock(int x, int y, int z) {
-		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
-		if (chunk == null) {
-			chunk = Chunk.newChunk();
-			this.chunks[(x >> 4)][(z >> 4)] = chunk;
-		}
-		
-		CompoundTag tag = chunk.getBlockStateAt(x, y, z);
-		if (tag == null) {
-			tag = new CompoundTag();
-			tag.putString("Name", "minecraft:air");
-		}
-		return new BlockState(tag);
+		return new BlockState(GeneratedBlockDataMappings.getStateFromGlobalPaletteID(getBlockStateID(x, y, z)).clone());
 	}
 
 	public void setBlock(BlockPosition blockPosition, BlockState state) {
@@ -150,12 +175,73 @@ public class World {
 	}
 	
 	public void setBlock(int x, int y, int z, BlockState state) {
-		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
+		CompoundTag block = state.toCompoundTag();
+		setBlockStateID(x, y, z, block, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(block));
+	}
+
+	public void setBlockStateID(int x, int y, int z, int stateID) {
+		setBlockStateID(x, y, z, GeneratedBlockDataMappings.getStateFromGlobalPaletteID(stateID).clone(), stateID);
+	}
+
+	private void setBlockStateID(int x, int y, int z, CompoundTag block, int stateID) {
+		int oldLight = getBlockLightEmission(x, y, z);
+		setBlock(x, y, z, block, stateID);
+		if (oldLight > 0 || LightEngine.getBlockLight(stateID) > 0) {
+			lightEngineBlock.updateBlock(x, y, z);
+		}
+		if (hasSkyLight()) {
+			lightEngineSky.updateBlock(x, y, z);
+		}
+	}
+
+	/**
+	 * Returns the 16 block sections of a chunk from the bottom up, a section is null if it only contains air.
+	 */
+	public BlockSection[] getBlockSections(int chunkX, int chunkZ) {
+		if (chunkX < 0 || chunkZ < 0 || chunkX >= chunks.length || chunkZ >= chunks[0].length) {
+			return null;
+		}
+		int offset = (chunkX * chunks[0].length + chunkZ) * 16;
+		return Arrays.copyOfRange(blockSections, offset, offset + 16);
+	}
+
+	protected boolean isAir(int x, int y, int z) {
+		return getBlockStateID(x, y, z) == GeneratedBlockDataMappings.getAirStateID();
+	}
+
+	protected int getBlockLightEmission(int x, int y, int z) {
+		return LightEngine.getBlockLight(getBlockStateID(x, y, z));
+	}
+
+	/**
+	 * Returns the chunk data packet of a chunk, which is serialized only once until the chunk is changed.
+	 * Chunks outside of the world share the serialized data of one empty chunk.
+	 */
+	public ClientboundLevelChunkWithLightPacket getChunkPacket(int chunkX, int chunkZ) {
+		Chunk chunk = getChunkAt(chunkX, chunkZ);
 		if (chunk == null) {
-			chunk = Chunk.newChunk();
-			this.chunks[(x >> 4)][(z >> 4)] = chunk;
+			return emptyChunkPacket.relocate(chunkX, chunkZ);
 		}
-		chunk.setBlockStateAt(x % 16, y % 16, z % 16, state.toCompoundTag(), false);
+		return chunkPackets.computeIfAbsent(chunkKey(chunkX, chunkZ), key -> {
+			byte[][] blockChunk = lightEngineBlock.getLightSections(chunkX, chunkZ);
+			byte[][] skyChunk = null;
+			if (hasSkyLight()) {
+				skyChunk = lightEngineSky.getLightSections(chunkX, chunkZ);
+			}
+			return new ClientboundLevelChunkWithLightPacket(chunkX, chunkZ, chunk, getBlockSections(chunkX, chunkZ), environment, skyChunk, blockChunk);
+		});
+	}
+
+	public void invalidateChunkPacket(int chunkX, int chunkZ) {
+		chunkPackets.remove(chunkKey(chunkX, chunkZ));
+	}
+
+	public void invalidateChunkPackets() {
+		chunkPackets.clear();
+	}
+
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
 	}
 
 	public Chunk[][] getChunks() {
@@ -263,19 +349,20 @@ public class World {
 	}
 	
 	public List<Player> getPlayers() {
-		return Limbo.getInstance().getPlayers().stream().filter(each -> each.getWorld().equals(this)).collect(Collectors.toList());
+		return Limbo.getInstance().getPlayersView().stream().filter(each -> each.getWorld().equals(this)).collect(Collectors.toList());
+	}
+
+	/**
+	 * Sends a packet to every player in this world, serializing it only once.
+	 */
+	public void broadcastPacket(PacketOut packet, boolean flush) {
+		Limbo.getInstance().broadcastPacket(packet, getPlayers(), flush);
 	}
 	
 	protected void removeEntity(Entity entity) {
 		entities.remove(entity);
 		PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(entity.getEntityId());
-		for (Player player : getPlayers()) {
-			try {
-				player.clientConnection.sendPacket(packet);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		broadcastPacket(packet, true);
 	}
 	
 	protected DataWatcher getDataWatcher(Entity entity) {
@@ -287,22 +374,10 @@ public class World {
 			if (watcher.getEntity().getWorld().equals(this)) {
 				Map<Field, WatchableObject> updated = watcher.update();
 				PacketPlayOutEntityMetadata packet = new PacketPlayOutEntityMetadata(watcher.getEntity(), false, updated.keySet().toArray(new Field[0]));
-				for (Player player : getPlayers()) {
-					try {
-						player.clientConnection.sendPacket(packet);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
+				broadcastPacket(packet, false);
 			} else {
 				PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(watcher.getEntity().getEntityId());
-				for (Player player : getPlayers()) {
-					try {
-						player.clientConnection.sendPacket(packet);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
+				broadcastPacket(packet, false);
 				entities.remove(watcher.getEntity());
 			}
 		}